@@ -0,0 +1,13 @@
+import java.util.function.BiFunction;
+
+/* Benchmark access to CorpusGenerator presets; see ManualScanTarget */
+public class CorpusSource implements BiFunction<String, Integer, String> {
+
+    private static final long SEED = 0x5EEDL;
+
+    /* Program of (at least) sizeChars characters from the named preset */
+    @Override
+    public String apply(String preset, Integer sizeChars) {
+        return CorpusGenerator.preset(preset, SEED).generate(sizeChars);
+    }
+}
@@ -0,0 +1,48 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.function.ToIntFunction;
+
+/* Benchmark entry point for Yylex; see ManualScanTarget */
+public class JFlexScanTarget implements ToIntFunction<String> {
+
+    /* Drive Yylex.yylex() the way AutoScannerMain.scan does; returns the token count */
+    @Override
+    public int applyAsInt(String program) {
+
+        SymbolTable symbolTable = new SymbolTable();
+        ErrorHandler errorHandler = new ErrorHandler();
+        errorHandler.setEcho(false);
+
+        Yylex lexer = new Yylex(new StringReader(program));
+        lexer.setSymbolTable(symbolTable);
+        lexer.setErrorHandler(errorHandler);
+
+        int totalTokens = 0;
+
+        try {
+            Token token;
+            while ((token = lexer.yylex()) != null) {
+
+                if (token.getType() == TokenType.EOF) {
+                    break;
+                }
+
+                if (token.getType() != TokenType.ERROR &&
+                    token.getType() != TokenType.WHITESPACE) {
+
+                    totalTokens++;
+
+                    if (token.getType() == TokenType.IDENTIFIER) {
+                        symbolTable.addIdentifier(token.getLexeme(), token.getType(),
+                                token.getLine(), token.getColumn());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return totalTokens;
+    }
+}
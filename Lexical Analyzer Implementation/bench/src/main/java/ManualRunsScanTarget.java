@@ -0,0 +1,18 @@
+import java.util.function.ToIntFunction;
+
+/*
+ * Benchmark entry point for ManualScanner with run skipping (CharRuns.get(),
+ * vectorized when the JVM has jdk.incubator.vector). See ManualScanTarget.
+ */
+public class ManualRunsScanTarget implements ToIntFunction<String> {
+
+    @Override
+    public int applyAsInt(String program) {
+
+        ManualScanner scanner = new ManualScanner(program);
+        scanner.setCharRuns(CharRuns.get());
+        scanner.getErrorHandler().setEcho(false);
+
+        return scanner.scan().size();
+    }
+}
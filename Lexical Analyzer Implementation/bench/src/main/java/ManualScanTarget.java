@@ -0,0 +1,21 @@
+import java.util.function.ToIntFunction;
+
+/*
+ * Benchmark entry point for ManualScanner.
+ *
+ * JMH only accepts benchmarks in a named package, and the scanner classes
+ * live in the default package, so the benchmarks reach them through this
+ * class (loaded by name) and a plain JDK interface.
+ */
+public class ManualScanTarget implements ToIntFunction<String> {
+
+    /* Run ManualScanner.scan() over the program; returns the token count */
+    @Override
+    public int applyAsInt(String program) {
+
+        ManualScanner scanner = new ManualScanner(program);
+        scanner.getErrorHandler().setEcho(false);
+
+        return scanner.scan().size();
+    }
+}
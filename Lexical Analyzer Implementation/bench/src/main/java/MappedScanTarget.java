@@ -0,0 +1,42 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.function.ToIntBiFunction;
+
+/*
+ * Benchmark entry point for ManualScanner over a memory-mapped file (see
+ * ManualScanTarget). The second argument picks how runs are crossed:
+ * "charAt" steps the DFA on every character, "scalar" and "swar" use
+ * CharRuns.scalar() and CharRuns.swar().
+ */
+public class MappedScanTarget implements ToIntBiFunction<Path, String> {
+
+    @Override
+    public int applyAsInt(Path file, String runs) {
+
+        ManualScanner scanner;
+        try {
+            scanner = ManualScanner.mapped(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        scanner.getErrorHandler().setEcho(false);
+
+        switch (runs) {
+            case "scalar":
+                scanner.setCharRuns(CharRuns.scalar());
+                break;
+            case "swar":
+                scanner.setCharRuns(CharRuns.swar());
+                break;
+            default:
+                break;
+        }
+
+        int tokens = 0;
+        while (scanner.nextToken() != null) {
+            tokens++;
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,64 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.ToIntBiFunction;
+
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * ManualScanner on a memory-mapped file, stepping the DFA per character
+ * (charAt) vs crossing runs with the scalar CharRuns loop or 8 bytes at a
+ * time with SWAR. No incubator modules are needed.
+ *
+ *   java -jar bench/target/benchmarks.jar RunScanBenchmark
+ *   java -jar bench/target/benchmarks.jar RunScanBenchmark -p mix=COMMENTS -p runs=charAt,swar
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RunScanBenchmark {
+
+    @Param({"4096"})
+    public int sizeKB;
+
+    @Param({"IDENTIFIERS", "NUMBERS", "STRINGS", "COMMENTS", "MIXED"})
+    public String mix;
+
+    @Param({"charAt", "scalar", "swar"})
+    public String runs;
+
+    private Path file;
+    private long fileBytes;
+
+    private ToIntBiFunction<Path, String> mapped;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException, IOException {
+        BiFunction<String, Integer, String> corpus = ScannerBenchmark.target("CorpusSource");
+        file = Files.createTempFile("runs-" + mix, ".y");
+        Files.write(file, corpus.apply(mix, sizeKB * 1024).getBytes(StandardCharsets.UTF_8));
+        fileBytes = Files.size(file);
+        mapped = ScannerBenchmark.target("MappedScanTarget");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int mappedScan(ScannerBenchmark.Throughput counters) {
+        int tokens = mapped.applyAsInt(file, runs);
+        counters.tokens += tokens;
+        counters.bytes += fileBytes;
+        return tokens;
+    }
+}
@@ -0,0 +1,88 @@
+package bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.ToIntFunction;
+
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * ManualScanner.scan() vs Yylex.yylex() over CorpusGenerator presets.
+ * manualRunScan is ManualScanner with run skipping; the fork adds the
+ * incubating Vector API so it takes the vectorized path.
+ *
+ * Besides ops/s, the aux counters report tokens/s and bytes/s (divide by
+ * 1e6 for MB/s). Run with "-prof gc" for allocation rates:
+ *
+ *   java -jar bench/target/benchmarks.jar ScannerBenchmark -prof gc
+ *   java -jar bench/target/benchmarks.jar ScannerBenchmark -p sizeKB=4096 -p mix=COMMENTS
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class ScannerBenchmark {
+
+    @Param({"256", "4096"})
+    public int sizeKB;
+
+    @Param({"IDENTIFIERS", "NUMBERS", "STRINGS", "COMMENTS", "MIXED", "INVALID"})
+    public String mix;
+
+    private String program;
+    private int programBytes;
+
+    private ToIntFunction<String> manual;
+    private ToIntFunction<String> manualRuns;
+    private ToIntFunction<String> jflex;
+
+    /* Per-invocation throughput counters, reported next to ops/s */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Throughput {
+        public long tokens;
+        public long bytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        BiFunction<String, Integer, String> corpus = target("CorpusSource");
+        program = corpus.apply(mix, sizeKB * 1024);
+        programBytes = program.getBytes(StandardCharsets.UTF_8).length;
+        manual = target("ManualScanTarget");
+        manualRuns = target("ManualRunsScanTarget");
+        jflex = target("JFlexScanTarget");
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T target(String className) throws ReflectiveOperationException {
+        return (T) Class.forName(className).getDeclaredConstructor().newInstance();
+    }
+
+    @Benchmark
+    public int manualScan(Throughput counters) {
+        int tokens = manual.applyAsInt(program);
+        counters.tokens += tokens;
+        counters.bytes += programBytes;
+        return tokens;
+    }
+
+    @Benchmark
+    public int manualRunScan(Throughput counters) {
+        int tokens = manualRuns.applyAsInt(program);
+        counters.tokens += tokens;
+        counters.bytes += programBytes;
+        return tokens;
+    }
+
+    @Benchmark
+    public int jflexScan(Throughput counters) {
+        int tokens = jflex.applyAsInt(program);
+        counters.tokens += tokens;
+        counters.bytes += programBytes;
+        return tokens;
+    }
+}
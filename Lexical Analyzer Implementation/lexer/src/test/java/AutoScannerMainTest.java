@@ -0,0 +1,82 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/* tokenize() (and --buffer) give the tokens, statistics and symbols that scan() prints */
+class AutoScannerMainTest {
+
+    // Yylex; SpecLexer over a Reader; SpecLexer over the text, read and mapped
+    private enum Setup { YYLEX, SPEC, SPEC_LAZY, SPEC_LAZY_MAPPED }
+
+    private static AutoScannerMain scanner(Path file, Setup setup) throws IOException {
+
+        AutoScannerMain scanner = new AutoScannerMain(file.toString());
+        scanner.getErrorHandler().setEcho(false);
+        if (setup != Setup.YYLEX) {
+            scanner.setTables(LexerTables.builtin());
+        }
+        scanner.setLazyPositions(setup == Setup.SPEC_LAZY || setup == Setup.SPEC_LAZY_MAPPED);
+        scanner.setMapped(setup == Setup.SPEC_LAZY_MAPPED);
+        return scanner;
+    }
+
+    private static String output(AutoScannerMain scanner) {
+
+        PrintStream console = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true, Charset.defaultCharset()));
+        try {
+            scanner.scan();
+        } finally {
+            System.setOut(console);
+        }
+        return bytes.toString(Charset.defaultCharset());
+    }
+
+    // The lines between the TOKENS OUTPUT header and the statistics
+    private static List<String> tokenLines(String output) {
+
+        List<String> lines = new ArrayList<>();
+        boolean inTokens = false;
+        for (String line : output.split("\\R")) {
+            if (line.equals("--------------")) {
+                inTokens = true;
+            } else if (inTokens && line.isEmpty()) {
+                break;
+            } else if (inTokens) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    void tokenizeMatchesScan() throws IOException {
+
+        for (Setup setup : Setup.values()) {
+            for (Path file : Samples.files()) {
+                String message = setup + " " + file;
+                String printed = output(scanner(file, setup));
+
+                TokenBuffer tokens = scanner(file, setup).tokenize();
+                List<String> lines = new ArrayList<>();
+                for (int i = 0; i < tokens.size(); i++) {
+                    lines.add(tokens.appendTo(i, new StringBuilder()).toString());
+                }
+                assertEquals(tokenLines(printed), lines, message);
+
+                AutoScannerMain buffered = scanner(file, setup);
+                buffered.setBuffered(true);
+                assertEquals(printed, output(buffered), message + " (--buffer)");
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/* One file that cannot be read does not fail the batch or change the other files' results */
+class BatchScannerTest {
+
+    @TempDir
+    Path directory;
+
+    private static String scan(BatchScanner.Engine engine, List<Path> files) throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            BatchScanner batch = new BatchScanner(engine, executor);
+            batch.getErrorHandler().setEcho(false);
+
+            StringBuilder out = new StringBuilder();
+            for (BatchScanner.FileResult result : batch.scanAll(files)) {
+                out.append(result.getFile().getFileName()).append(' ').append(result.getTotalTokens())
+                        .append(' ').append(result.getErrorCount()).append('\n');
+            }
+            out.append(Samples.errors(batch.getErrorHandler()));
+            out.append(Samples.symbols(batch.getSymbolTable()));
+            return out.toString();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void unreadableFileIsSkipped() throws Exception {
+
+        List<Path> files = new ArrayList<>(Samples.files());
+        files.add(0, directory.resolve("missing.lang"));
+
+        for (BatchScanner.Engine engine : BatchScanner.Engine.values()) {
+            String expected = "missing.lang 0 0\n" + scan(engine, Samples.files());
+            assertEquals(expected, scan(engine, files), engine.toString());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * SwarRuns and VectorRuns against the scalar loop, on random text biased
+ * towards each set so that runs of every length end at every lane.
+ */
+class CharRunsTest {
+
+    private static final int[] SETS = {
+            CharRuns.SPACES, CharRuns.DIGITS, CharRuns.IDENTIFIER_TAIL, CharRuns.LINE, CharRuns.STRING_BODY
+    };
+
+    // Members and non-members of the sets, including chars that look like members outside ASCII
+    private static final char[] ALPHABET = {
+            ' ', '0', '5', '9', 'a', 'm', 'z', '_', '"', '\\', '\n', '\r', '\t',
+            'A', 'Z', '/', ':', '`', '{', '#', '٠', 'é', ' ', '耠', '０'
+    };
+
+    private final Random random = new Random(42);
+
+    private final List<CharRuns> candidates = List.of(CharRuns.swar(), CharRuns.get());
+
+    @Test
+    void charRunsMatchScalar() {
+
+        CharRuns scalar = CharRuns.scalar();
+        for (int round = 0; round < 2000; round++) {
+            char[] chars = randomChars(1 + random.nextInt(200));
+            for (int set : SETS) {
+                for (int from = 0; from < chars.length; from += 1 + random.nextInt(8)) {
+                    int expected = scalar.runEnd(chars, from, chars.length, set);
+                    for (CharRuns runs : candidates) {
+                        assertEquals(expected, runs.runEnd(chars, from, chars.length, set),
+                                runs.getClass() + " set " + set);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void byteRunsMatchScalar() {
+
+        CharRuns scalar = CharRuns.scalar();
+        for (int round = 0; round < 2000; round++) {
+            char[] chars = randomChars(1 + random.nextInt(200));
+            ByteBuffer bytes = ByteBuffer.allocateDirect(chars.length);
+            for (char c : chars) {
+                // Mapped input is ASCII
+                bytes.put((byte) (c & 0x7F));
+            }
+            int to = chars.length - random.nextInt(Math.min(chars.length, 9));
+            for (int set : SETS) {
+                for (int from = 0; from < to; from += 1 + random.nextInt(8)) {
+                    int expected = scalar.runEnd(bytes, from, to, set);
+                    for (CharRuns runs : candidates) {
+                        assertEquals(expected, runs.runEnd(bytes, from, to, set),
+                                runs.getClass() + " set " + set);
+                    }
+                }
+            }
+        }
+    }
+
+    // Mostly long runs of one character, so that vector and word loops get exercised
+    private char[] randomChars(int length) {
+
+        char[] chars = new char[length];
+        int pos = 0;
+        while (pos < length) {
+            char c = ALPHABET[random.nextInt(ALPHABET.length)];
+            int run = Math.min(length - pos, 1 + random.nextInt(40));
+            for (int i = 0; i < run; i++) {
+                chars[pos++] = random.nextInt(8) == 0 ? ALPHABET[random.nextInt(ALPHABET.length)] : c;
+            }
+        }
+        return chars;
+    }
+}
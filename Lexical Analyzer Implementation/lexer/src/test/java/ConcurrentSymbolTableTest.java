@@ -0,0 +1,91 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/* A shared ConcurrentSymbolTable ends up with what merging a table per file gives */
+class ConcurrentSymbolTableTest {
+
+    @TempDir
+    Path cacheDirectory;
+
+    private String symbols(BatchScanner.Engine engine, boolean shared, Path cache) throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BatchScanner batch = new BatchScanner(engine, executor, shared);
+            batch.getErrorHandler().setEcho(false);
+            TokenCache tokenCache = (cache == null) ? null : batch.openCache(cache, 1 << 20);
+            batch.setCache(tokenCache);
+            batch.scanAll(Samples.files());
+            if (tokenCache != null) {
+                tokenCache.close();
+            }
+            return Samples.symbols(batch.getSymbolTable());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void sharedTableMatchesMergedTables() throws Exception {
+
+        for (BatchScanner.Engine engine : BatchScanner.Engine.values()) {
+            String merged = symbols(engine, false, null);
+            assertEquals(merged, symbols(engine, true, null), engine.toString());
+
+            // Once to fill the cache, then served from it
+            Path cache = cacheDirectory.resolve(engine.toString());
+            assertEquals(merged, symbols(engine, true, cache), engine + " (filling the cache)");
+            assertEquals(merged, symbols(engine, true, cache), engine + " (cached)");
+            assertEquals(merged, symbols(engine, false, cache), engine + " (cached, merged)");
+        }
+    }
+
+    @Test
+    void symbolIdsAreStable() throws Exception {
+
+        ConcurrentSymbolTable table = new ConcurrentSymbolTable();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<int[]>> ids = new ArrayList<>();
+        try {
+            for (int source = 0; source < 4; source++) {
+                SymbolStore view = table.forSource(source);
+                ids.add(executor.submit(() -> {
+                    int[] seen = new int[500];
+                    for (int i = 0; i < 5000; i++) {
+                        String name = "Name" + (i % 500);
+                        seen[i % 500] = view.addIdentifier(name, 0, name.length(), i + 1, 1);
+                    }
+                    return seen;
+                }));
+            }
+
+            int[] first = ids.get(0).get();
+            for (Future<int[]> other : ids) {
+                assertEquals(Arrays.toString(first), Arrays.toString(other.get()));
+            }
+            for (int i = 0; i < 500; i++) {
+                String name = "Name" + i;
+                SymbolTable.SymbolInfo info = table.getSymbol(first[i]);
+                assertEquals(first[i], info.getId(), name);
+                assertEquals(name, info.getName());
+                assertEquals(name, table.getName(first[i]));
+                assertEquals(first[i], table.lookup(name).getId(), name);
+                assertEquals(40, info.getFrequency(), name);
+                assertEquals(40, table.findUses(name).size(), name);
+            }
+            assertEquals(500, table.getSize());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
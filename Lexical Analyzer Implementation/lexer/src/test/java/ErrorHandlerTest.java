@@ -0,0 +1,150 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * Buffered and asynchronous reporting write exactly what synchronous
+ * reporting writes; replaceLines() keeps the counts right.
+ */
+class ErrorHandlerTest {
+
+    // An output that falls behind the reporter, so the async queue fills up
+    private static final class SlowStream extends OutputStream {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final boolean slow;
+
+        SlowStream(boolean slow) {
+            this.slow = slow;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            bytes.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            if (slow) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            bytes.write(b, off, len);
+        }
+
+        synchronized String text() {
+            return bytes.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String report(ErrorHandler.ReportMode mode) {
+
+        // Only the async writer needs an output slower than the reporter
+        SlowStream stream = new SlowStream(mode == ErrorHandler.ReportMode.ASYNC);
+        ErrorHandler handler = new ErrorHandler();
+        handler.setReportMode(mode);
+        handler.setOutput(new PrintStream(stream, false, StandardCharsets.UTF_8));
+
+        for (int i = 0; i < 20000; i++) {
+            handler.reportError(ErrorHandler.ErrorType.INVALID_CHARACTER, i + 1, 1, "@" + i, "Invalid character");
+        }
+        handler.flush();
+        return stream.text();
+    }
+
+    @Test
+    void everyModeWritesEveryError() {
+
+        String expected = report(ErrorHandler.ReportMode.SYNCHRONOUS);
+        assertEquals(expected, report(ErrorHandler.ReportMode.BUFFERED));
+        assertEquals(expected, report(ErrorHandler.ReportMode.ASYNC));
+    }
+
+    private static long writerThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("error-writer") && thread.isAlive())
+                .count();
+    }
+
+    @Test
+    void idleWriterThreadsExit() throws InterruptedException {
+
+        // A handler per file, never switched back from ASYNC
+        for (int file = 0; file < 20; file++) {
+            ErrorHandler handler = new ErrorHandler();
+            handler.setReportMode(ErrorHandler.ReportMode.ASYNC);
+            handler.setOutput(new PrintStream(new SlowStream(false), false, StandardCharsets.UTF_8));
+            handler.reportError(ErrorHandler.ErrorType.INVALID_CHARACTER, 1, 1, "@", "Invalid character");
+            handler.flush();
+        }
+
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (writerThreads() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, writerThreads());
+    }
+
+    private static ErrorHandler errors(int retainLimit, int... lines) {
+        ErrorHandler handler = new ErrorHandler();
+        handler.setEcho(false);
+        handler.setRetainLimit(retainLimit);
+        for (int line : lines) {
+            handler.reportError(ErrorHandler.ErrorType.INVALID_CHARACTER, line, 1, "@");
+        }
+        return handler;
+    }
+
+    private static void replace(ErrorHandler handler, int fromLine, int toLine, int lineDelta, int... lines) {
+        ErrorHandler replacement = errors(Integer.MAX_VALUE);
+        for (int line : lines) {
+            replacement.reportError(ErrorHandler.ErrorType.MALFORMED_STRING, line, 1, "\"");
+        }
+        handler.replaceLines(fromLine, toLine, lineDelta, replacement);
+    }
+
+    @Test
+    void replaceLinesCountsErrorsThatWereNotRetained() {
+
+        ErrorHandler all = errors(Integer.MAX_VALUE, 1, 2, 3, 4, 5);
+        ErrorHandler limited = errors(2, 1, 2, 3, 4, 5);
+        List<ErrorHandler.CompilationError> before = new ArrayList<>(limited.getErrors());
+
+        // Line 2 becomes three lines with an error each, then lines 5-6 (once 3-4) go away
+        for (ErrorHandler handler : List.of(all, limited)) {
+            replace(handler, 2, 2, 2, 2, 3, 4);
+            replace(handler, 5, 6, -2);
+        }
+
+        assertEquals("[1, 2, 3, 4, 5]", lines(all));
+        assertEquals(all.getErrorCount(), limited.getErrorCount());
+        assertEquals("[1, 2]", lines(limited));
+
+        // Errors handed out earlier are not moved
+        assertEquals(2, before.get(1).getLine());
+
+        // Dropped errors after the edit are moved too, and can be taken out later
+        replace(limited, 5, 5, 0);
+        replace(all, 5, 5, 0);
+        assertEquals(all.getErrorCount(), limited.getErrorCount());
+        assertEquals(4, limited.getErrorCount());
+    }
+
+    private static String lines(ErrorHandler handler) {
+        List<Integer> lines = new ArrayList<>();
+        for (ErrorHandler.CompilationError error : handler.getErrors()) {
+            lines.add(error.getLine());
+        }
+        return lines.toString();
+    }
+}
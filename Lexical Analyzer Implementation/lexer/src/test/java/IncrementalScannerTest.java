@@ -0,0 +1,103 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/* After any sequence of edits the tokens, errors and symbols are those of a fresh scan */
+class IncrementalScannerTest {
+
+    private static final String[] INSERTS = {
+            "", "X", "1", "2.5", " ", "\n", "\"", "##", "#* ", " *#", "Counter_1 ", "@", "start", "\"a b\"\n"
+    };
+
+    private final Random random = new Random(3);
+
+    private static String describe(List<Token> tokens, ErrorHandler errors, SymbolStore symbols) {
+        StringBuilder out = new StringBuilder();
+        for (Token token : tokens) {
+            token.appendTo(out).append('\n');
+        }
+        out.append(Samples.errors(errors));
+
+        // Edits can reorder first uses, so symbols are compared in first-use order, not ID order
+        List<SymbolTable.SymbolInfo> entries = new ArrayList<>(symbols.entries());
+        entries.sort(Comparator.comparingInt(SymbolTable.SymbolInfo::getFirstLine)
+                .thenComparingInt(SymbolTable.SymbolInfo::getFirstColumn));
+        for (SymbolTable.SymbolInfo symbol : entries) {
+            out.append(symbol.getName()).append(' ').append(symbol.getFrequency())
+                    .append(' ').append(symbol.getLocations()).append('\n');
+        }
+        return out.append(symbols.getSize()).append(" symbols\n").toString();
+    }
+
+    private static String describe(IncrementalScanner incremental) {
+        return describe(incremental.getTokens(), incremental.getErrorHandler(), incremental.getSymbolTable());
+    }
+
+    private static String fresh(String text) {
+        ManualScanner scanner = new ManualScanner(text);
+        scanner.getErrorHandler().setEcho(false);
+        return describe(scanner.scan(), scanner.getErrorHandler(), scanner.getSymbolTable());
+    }
+
+    @Test
+    void randomEditsMatchFreshScan() {
+
+        String program = Samples.large(20000);
+        IncrementalScanner incremental = new IncrementalScanner(program);
+        assertEquals(fresh(program), describe(incremental));
+
+        for (int i = 0; i < 300; i++) {
+            String text = incremental.getText();
+            int offset = random.nextInt(text.length() + 1);
+            int removed = random.nextInt(Math.min(text.length() - offset, 20) + 1);
+            String inserted = INSERTS[random.nextInt(INSERTS.length)];
+
+            incremental.edit(offset, removed, inserted);
+
+            String edited = text.substring(0, offset) + inserted + text.substring(offset + removed);
+            assertEquals(edited, incremental.getText());
+            assertEquals(fresh(edited), describe(incremental),
+                    "edit " + i + " at " + offset + "-" + removed + "+" + inserted);
+        }
+    }
+
+    @Test
+    void typingMatchesFreshScan() {
+
+        // Char by char into a small document, so the gaps fill up and grow
+        String typed = Samples.large(200);
+        IncrementalScanner incremental = new IncrementalScanner("start\nfinish\n");
+        int offset = "start\n".length();
+        for (int i = 0; i < typed.length(); i++) {
+            incremental.edit(offset + i, 0, typed.substring(i, i + 1));
+        }
+
+        String text = "start\n" + typed + "finish\n";
+        assertEquals(text, incremental.getText());
+        assertEquals(fresh(text), describe(incremental));
+    }
+
+    @Test
+    void symbolsWithNoUsesLeftAreHidden() {
+
+        IncrementalScanner incremental = new IncrementalScanner("Count = 1\nTotal\n");
+        incremental.edit(0, 5, "Other");
+
+        SymbolTable symbols = incremental.getSymbolTable();
+        assertEquals(2, symbols.getSize());
+        assertNull(symbols.lookup("Count"));
+        assertEquals(List.of(), symbols.findUses("Count"));
+        assertEquals(fresh("Other = 1\nTotal\n"), describe(incremental));
+
+        // Used again: back in the table
+        incremental.edit(0, 5, "Count");
+        assertEquals(List.of("Line 1, Col 1"), symbols.findUses("Count"));
+        assertEquals(fresh("Count = 1\nTotal\n"), describe(incremental));
+    }
+}
@@ -0,0 +1,124 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/* NumberDecoder against Long.parseLong and Double.parseDouble */
+class NumberDecoderTest {
+
+    private final NumberDecoder decoder = new NumberDecoder();
+    private final Random random = new Random(7);
+
+    private void assertFloat(String literal) {
+        assertTrue(decoder.decodeFloat(literal, 0, literal.length()), literal);
+        assertEquals(Double.doubleToRawLongBits(Double.parseDouble(literal)),
+                Double.doubleToRawLongBits(decoder.getDouble()), literal);
+
+        char[] chars = ("  " + literal + " ").toCharArray();
+        assertTrue(decoder.decodeFloat(chars, 2, 2 + literal.length()), literal);
+        assertEquals(Double.parseDouble(literal), decoder.getDouble(), literal);
+    }
+
+    private void assertInteger(String literal) {
+        assertTrue(decoder.decodeInteger(literal, 0, literal.length()), literal);
+        assertEquals(Long.parseLong(literal), decoder.getLong(), literal);
+    }
+
+    @Test
+    void integers() {
+
+        for (String literal : new String[] {
+                "0", "+0", "-0", "42", "-567", "+100", "007",
+                "9223372036854775807", "-9223372036854775808", "+9223372036854775807" }) {
+            assertInteger(literal);
+        }
+        for (int i = 0; i < 100000; i++) {
+            assertInteger(Long.toString(random.nextLong() >> random.nextInt(64)));
+        }
+    }
+
+    @Test
+    void integersOutOfRange() {
+
+        for (String literal : new String[] {
+                "9223372036854775808", "-9223372036854775809", "99999999999999999999" }) {
+            assertFalse(decoder.decodeInteger(literal, 0, literal.length()), literal);
+        }
+    }
+
+    @Test
+    void floats() {
+
+        for (String literal : new String[] {
+                "0.0", "-0.0", "3.14", "+2.5", "-0.123456", "1.5e10", "2.0E-3", "1.0e-400",
+                "9007199254740993.0", "1.7976931348623157e308", "4.9e-324", "2.2250738585072014E-308",
+                "123456789012345678901234567890.5", "0.000001e-3", "9.999999e22", "1.0e23" }) {
+            assertFloat(literal);
+        }
+    }
+
+    @Test
+    void randomFloats() {
+
+        for (int i = 0; i < 200000; i++) {
+            // Up to 19 significant digits (the fast paths) and now and then more
+            int digits = 1 + random.nextInt(random.nextInt(10) == 0 ? 30 : 19);
+            StringBuilder literal = new StringBuilder();
+            if (random.nextBoolean()) {
+                literal.append(random.nextBoolean() ? '-' : '+');
+            }
+            int point = 1 + random.nextInt(digits);
+            for (int d = 0; d < digits; d++) {
+                if (d == point) {
+                    literal.append('.');
+                }
+                literal.append((char) ('0' + random.nextInt(10)));
+            }
+            if (point == digits) {
+                literal.append(".0");
+            }
+            if (random.nextBoolean()) {
+                literal.append('e').append(random.nextInt(640) - 330);
+            }
+            String text = literal.toString();
+            if (!Double.isInfinite(Double.parseDouble(text))) {
+                assertFloat(text);
+            }
+        }
+    }
+
+    @Test
+    void randomDoublesRoundTrip() {
+
+        for (int i = 0; i < 200000; i++) {
+            double value = Double.longBitsToDouble(random.nextLong());
+            if (Double.isFinite(value)) {
+                // Shortest digits that round-trip, e.g. 1.2345E-300
+                assertFloat(Double.toString(value));
+            }
+        }
+    }
+
+    @Test
+    void floatsOutOfRange() {
+
+        for (String literal : new String[] { "1.8e309", "-1.0e400", "1.7976931348623159e308" }) {
+            assertFalse(decoder.decodeFloat(literal, 0, literal.length()), literal);
+        }
+    }
+
+    @Test
+    void unicodeDigits() {
+
+        String integer = "١٢٣";
+        assertTrue(decoder.decodeInteger(integer, 0, integer.length()));
+        assertEquals(123, decoder.getLong());
+
+        String fraction = "١.٥e٢";
+        assertTrue(decoder.decodeFloat(fraction, 0, fraction.length()));
+        assertEquals(150.0, decoder.getDouble());
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ * The sample programs in test/*.lang, and a text form of everything a scan
+ * produces (tokens, errors, symbols, statistics) so two scans can be
+ * compared with one assertEquals.
+ */
+final class Samples {
+
+    private Samples() {
+    }
+
+    static Path directory() {
+        return Paths.get(System.getProperty("why.samples", "../test"));
+    }
+
+    static List<Path> files() {
+        try (Stream<Path> files = Files.list(directory())) {
+            return files.filter(file -> file.toString().endsWith(".lang"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String read(Path file) {
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /* Every sample joined, repeated until the program is at least length chars */
+    static String large(int length) {
+
+        StringBuilder out = new StringBuilder(length + 4096);
+        while (out.length() < length) {
+            for (Path file : files()) {
+                out.append(read(file)).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    /* Scan to the end and describe the result */
+    static String scan(ManualScanner scanner) {
+        scanner.getErrorHandler().setEcho(false);
+        return describe(scanner.scan(), scanner);
+    }
+
+    static String describe(List<Token> tokens, ManualScanner scanner) {
+
+        StringBuilder out = new StringBuilder();
+        for (Token token : tokens) {
+            token.appendTo(out).append('\n');
+        }
+        out.append(errors(scanner.getErrorHandler()));
+        out.append(symbols(scanner.getSymbolTable()));
+        out.append(scanner.getStatistics()).append('\n');
+        return out.toString();
+    }
+
+    static String errors(ErrorHandler errors) {
+
+        StringBuilder out = new StringBuilder();
+        for (ErrorHandler.CompilationError error : errors.getErrors()) {
+            out.append(error.getType()).append(' ')
+                    .append(error.getLine()).append(':').append(error.getColumn()).append(' ')
+                    .append('"').append(error.getLexeme()).append("\" ")
+                    .append(error.getReason()).append('\n');
+        }
+        return out.toString();
+    }
+
+    static String symbols(SymbolStore table) {
+
+        StringBuilder out = new StringBuilder();
+        for (SymbolTable.SymbolInfo symbol : table.entries()) {
+            out.append(symbol.getName()).append(' ')
+                    .append(symbol.getLocations()).append('\n');
+        }
+        return out.toString();
+    }
+}
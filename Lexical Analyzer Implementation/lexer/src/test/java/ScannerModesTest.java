@@ -0,0 +1,142 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/*
+ * Every ManualScanner mode must produce exactly what the reference mode
+ * (switch-based DFA, one character at a time, eager positions, sequential)
+ * produces: same tokens, positions, errors, symbols and statistics.
+ */
+class ScannerModesTest {
+
+    static Stream<Arguments> samples() {
+        List<Arguments> arguments = new ArrayList<>();
+        for (Path file : Samples.files()) {
+            arguments.add(Arguments.of(file, false));
+            arguments.add(Arguments.of(file, true));
+        }
+        return arguments.stream();
+    }
+
+    private static String reference(String program, boolean panic) {
+        ManualScanner scanner = new ManualScanner(program);
+        scanner.setPanicMode(panic);
+        return Samples.scan(scanner);
+    }
+
+    @ParameterizedTest(name = "{0} panic={1}")
+    @MethodSource("samples")
+    void tableDrivenMatchesSwitch(Path file, boolean panic) {
+
+        String program = Samples.read(file);
+
+        ManualScanner table = new ManualScanner(program);
+        table.setPanicMode(panic);
+        table.setTableDriven(true);
+
+        assertEquals(reference(program, panic), Samples.scan(table));
+    }
+
+    @ParameterizedTest(name = "{0} panic={1}")
+    @MethodSource("samples")
+    void charRunsMatchPerCharacter(Path file, boolean panic) throws IOException {
+
+        String expected = reference(Samples.read(file), panic);
+
+        List<CharRuns> runs = List.of(CharRuns.scalar(), CharRuns.swar(), CharRuns.get());
+        for (CharRuns run : runs) {
+            for (boolean table : new boolean[] { false, true }) {
+
+                ManualScanner string = new ManualScanner(Samples.read(file));
+                string.setPanicMode(panic);
+                string.setTableDriven(table);
+                string.setCharRuns(run);
+                assertEquals(expected, Samples.scan(string), run.getClass() + " on String, table=" + table);
+
+                ManualScanner mapped = ManualScanner.mapped(file);
+                mapped.setPanicMode(panic);
+                mapped.setTableDriven(table);
+                mapped.setCharRuns(run);
+                assertEquals(expected, Samples.scan(mapped), run.getClass() + " on mapped, table=" + table);
+            }
+        }
+    }
+
+    @ParameterizedTest(name = "{0} panic={1}")
+    @MethodSource("samples")
+    void readerAndLazyPositionsMatch(Path file, boolean panic) {
+
+        String program = Samples.read(file);
+        String expected = reference(program, panic);
+
+        ManualScanner reader = new ManualScanner(new StringReader(program));
+        reader.setPanicMode(panic);
+        assertEquals(expected, Samples.scan(reader));
+
+        ManualScanner lazy = new ManualScanner(program);
+        lazy.setPanicMode(panic);
+        lazy.setLazyPositions(true);
+        lazy.setCharRuns(CharRuns.get());
+        assertEquals(expected, Samples.scan(lazy));
+    }
+
+    @Test
+    void parallelScanMatchesSequential() {
+
+        // Large enough to be cut into several chunks
+        String program = Samples.large(1 << 20);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (boolean panic : new boolean[] { false, true }) {
+                ManualScanner parallel = new ManualScanner(program);
+                parallel.setPanicMode(panic);
+                parallel.setTableDriven(true);
+                parallel.getErrorHandler().setEcho(false);
+                List<Token> tokens = parallel.scanParallel(pool);
+
+                assertEquals(reference(program, panic), Samples.describe(tokens, parallel), "panic=" + panic);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void parallelScanStopsAtTheErrorLimit() {
+
+        String program = Samples.large(1 << 20);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ManualScanner sequential = new ManualScanner(program);
+            sequential.getErrorHandler().setErrorLimit(1000);
+
+            ManualScanner parallel = new ManualScanner(program);
+            parallel.getErrorHandler().setEcho(false);
+            parallel.getErrorHandler().setErrorLimit(1000);
+            List<Token> tokens = parallel.scanParallel(pool);
+
+            assertEquals(Samples.scan(sequential), Samples.describe(tokens, parallel));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void vectorRunsAreUsedWhenTheModuleIsPresent() {
+        assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+        assertTrue(CharRuns.get().isVectorized());
+    }
+}
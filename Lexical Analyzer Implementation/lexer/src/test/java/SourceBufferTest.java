@@ -0,0 +1,61 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * A limited buffer ends at its limit, whatever holds the text; a streamed
+ * buffer does not grow with long lines.
+ */
+class SourceBufferTest {
+
+    @TempDir
+    Path directory;
+
+    private static void assertLimited(SourceBuffer buffer) {
+
+        SourceBuffer limited = buffer.limit(5);
+        assertEquals(5, limited.length());
+        assertEquals("Count", limited.toString());
+        assertFalse(limited.has(5));
+    }
+
+    @Test
+    void limitEndsTheText() throws IOException {
+
+        String program = "Count = 42\n";
+        Path file = directory.resolve("limit.lang");
+        Files.write(file, program.getBytes(StandardCharsets.US_ASCII));
+
+        assertLimited(SourceBuffer.of(program));
+        assertLimited(SourceBuffer.map(file));
+    }
+
+    @Test
+    void longLinesDoNotGrowTheReaderBuffer() {
+
+        String filler = " ".repeat(1 << 20);
+        String program = "Count" + filler + "Total\n##" + filler.replace(' ', 'x') + "\nSum = 1\n";
+
+        ManualScanner reference = new ManualScanner(program);
+        String expected = Samples.scan(reference);
+
+        for (boolean withRuns : new boolean[] {false, true}) {
+            SourceBuffer.OfReader buffer = new SourceBuffer.OfReader(new StringReader(program));
+            ManualScanner scanner = new ManualScanner(buffer);
+            if (withRuns) {
+                scanner.setCharRuns(CharRuns.get());
+            }
+            assertEquals(expected, Samples.scan(scanner), withRuns ? "runs" : "no runs");
+            assertTrue(buffer.capacity() <= 1 << 15, (withRuns ? "runs" : "no runs") + ": buffer grew to " + buffer.capacity());
+        }
+    }
+}
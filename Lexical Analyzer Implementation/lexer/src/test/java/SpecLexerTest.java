@@ -0,0 +1,112 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * SpecLexer on tables built from Scanner.flex gives what the generated Yylex
+ * gives, and ManualScanner agrees with it on what is a comment.
+ */
+class SpecLexerTest {
+
+    @TempDir
+    Path directory;
+
+    private static String spec() throws IOException {
+        try (InputStream in = SpecLexerTest.class.getResourceAsStream("/Scanner.flex")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String lex(Lexer lexer) throws IOException {
+
+        ErrorHandler errors = new ErrorHandler();
+        errors.setEcho(false);
+        lexer.setErrorHandler(errors);
+
+        StringBuilder out = new StringBuilder();
+        Token token;
+        do {
+            token = lexer.yylex();
+            token.appendTo(out).append(' ').append(token.getLongValue()).append('\n');
+        } while (token.getType() != TokenType.EOF);
+
+        out.append(Samples.errors(errors));
+        out.append("comments ").append(lexer.getCommentCount())
+                .append(" lines ").append(lexer.getLineCount()).append('\n');
+        return out.toString();
+    }
+
+    @Test
+    void generatedAndCachedTablesMatchYylex() throws IOException {
+
+        String spec = spec();
+        Path cache = directory.resolve("Scanner.flex.dfa");
+
+        LexerTables generated = LexerTables.forSpec(spec, cache);
+        assertTrue(Files.exists(cache));
+        LexerTables cached = LexerTables.forSpec(spec, cache);
+
+        for (Path file : Samples.files()) {
+            String program = Samples.read(file);
+            String expected = lex(new Yylex(new StringReader(program)));
+
+            assertEquals(expected, lex(new SpecLexer(generated, program)), file.toString());
+            assertEquals(expected, lex(new SpecLexer(cached, program)), file + " (cached tables)");
+        }
+    }
+
+    // Tokens other than ERROR, error positions and the comment count
+    private static String comments(List<Token> tokens, ErrorHandler errors, int commentCount) {
+
+        StringBuilder out = new StringBuilder();
+        for (Token token : tokens) {
+            if (token.getType() != TokenType.ERROR) {
+                token.appendTo(out).append('\n');
+            }
+        }
+        for (ErrorHandler.CompilationError error : errors.getErrors()) {
+            out.append("error ").append(error.getLine()).append(':').append(error.getColumn()).append('\n');
+        }
+        return out.append("comments ").append(commentCount).toString();
+    }
+
+    @Test
+    void manualScannerCommentsMatchSpec() throws IOException {
+
+        LexerTables tables = LexerTables.builtin();
+        String[] programs = {
+                "Count ## note\nTotal\n", "Count # 12\nTotal\n", "#\nX", "X ###\n#", "## only",
+                "Total#\n", "12 # # 3\n", "##\n##\n", "X\n#\n## done\n"
+        };
+
+        for (String program : programs) {
+            SpecLexer spec = new SpecLexer(tables, program);
+            ErrorHandler specErrors = new ErrorHandler();
+            specErrors.setEcho(false);
+            spec.setErrorHandler(specErrors);
+            List<Token> specTokens = new ArrayList<>();
+            Token token;
+            while ((token = spec.yylex()).getType() != TokenType.EOF) {
+                specTokens.add(token);
+            }
+
+            ManualScanner manual = new ManualScanner(program);
+            manual.getErrorHandler().setEcho(false);
+            List<Token> manualTokens = manual.scan();
+
+            assertEquals(comments(specTokens, specErrors, spec.getCommentCount()),
+                    comments(manualTokens, manual.getErrorHandler(), manual.getCommentCount()), program);
+        }
+    }
+}
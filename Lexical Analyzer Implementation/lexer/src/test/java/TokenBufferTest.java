@@ -0,0 +1,71 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/* Entries read back from a TokenBuffer are the tokens that went in */
+class TokenBufferTest {
+
+    private static void assertSame(List<Token> tokens, TokenBuffer buffer) {
+
+        assertEquals(tokens.size(), buffer.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            String message = "token " + i;
+            assertEquals(token.getType(), buffer.getType(i), message);
+            assertEquals(token.getLexeme(), buffer.getLexeme(i).toString(), message);
+            assertEquals(token.getLine(), buffer.getLine(i), message);
+            assertEquals(token.getColumn(), buffer.getColumn(i), message);
+            assertEquals(token.getSymbolId(), buffer.getSymbolId(i), message);
+            assertEquals(token.toString(), buffer.get(i).toString(), message);
+            assertEquals(token.toString(), buffer.appendTo(i, new StringBuilder()).toString(), message);
+        }
+    }
+
+    @Test
+    void sourceAndPoolBackedBuffersHoldTheTokens() throws IOException {
+
+        // Large enough for the arrays to grow
+        String program = Samples.large(40000);
+        LexerTables tables = LexerTables.builtin();
+
+        List<Token> tokens = new ArrayList<>();
+        SpecLexer lexer = new SpecLexer(tables, program);
+        Token token;
+        while ((token = lexer.yylex()).getType() != TokenType.EOF) {
+            tokens.add(token);
+        }
+
+        TokenBuffer indexed = new TokenBuffer(program);
+        SpecLexer spec = new SpecLexer(tables, program);
+        TokenType type;
+        while ((type = spec.advance()) != TokenType.EOF) {
+            indexed.add(type, spec.getTokenStart(), spec.getTokenEnd() - spec.getTokenStart(),
+                    spec.getTokenLine(), spec.getTokenColumn());
+        }
+
+        TokenBuffer pooled = new TokenBuffer();
+        for (Token each : tokens) {
+            pooled.add(each);
+        }
+
+        assertSame(tokens, indexed);
+        assertSame(tokens, pooled);
+    }
+
+    @Test
+    void indexesAreChecked() {
+
+        TokenBuffer buffer = new TokenBuffer("Count");
+        buffer.add(TokenType.IDENTIFIER, 0, 5, 1, 1);
+
+        assertEquals(-1, buffer.getSymbolId(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.getType(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.get(-1));
+        assertThrows(IllegalStateException.class, () -> buffer.add(TokenType.IDENTIFIER, "Total", 1, 7));
+    }
+}
@@ -0,0 +1,165 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/* A batch scan served from the TokenCache gives the same result as one that lexes */
+class TokenCacheTest {
+
+    @TempDir
+    Path cacheDirectory;
+
+    private static String describe(BatchScanner batch, List<BatchScanner.FileResult> results) {
+        StringBuilder out = new StringBuilder();
+        for (BatchScanner.FileResult result : results) {
+            out.append(result.getFile()).append(' ').append(result.getTotalTokens())
+                    .append(' ').append(result.getErrorCount()).append('\n');
+        }
+        out.append(Samples.errors(batch.getErrorHandler()));
+        out.append(Samples.symbols(batch.getSymbolTable()));
+        return out.toString();
+    }
+
+    private static String scan(BatchScanner.Engine engine, Path cache, List<Boolean> cached)
+            throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            BatchScanner batch = new BatchScanner(engine, executor);
+            batch.getErrorHandler().setEcho(false);
+            TokenCache tokenCache = (cache == null) ? null : batch.openCache(cache, 1 << 20);
+            batch.setCache(tokenCache);
+
+            List<BatchScanner.FileResult> results = batch.scanAll(Samples.files());
+            for (BatchScanner.FileResult result : results) {
+                cached.add(result.isCached());
+            }
+            if (tokenCache != null) {
+                tokenCache.close();
+            }
+            return describe(batch, results);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void cachedScanMatchesUncached() throws Exception {
+
+        for (BatchScanner.Engine engine : BatchScanner.Engine.values()) {
+            Path directory = cacheDirectory.resolve(engine.name());
+
+            List<Boolean> cached = new ArrayList<>();
+            String expected = scan(engine, null, cached);
+
+            cached.clear();
+            assertEquals(expected, scan(engine, directory, cached), engine + " first run");
+            assertFalse(cached.contains(true));
+
+            cached.clear();
+            assertEquals(expected, scan(engine, directory, cached), engine + " cached run");
+            assertFalse(cached.contains(false));
+        }
+    }
+
+    @Test
+    void cachedTokensMatchScanner() throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            BatchScanner batch = new BatchScanner(BatchScanner.Engine.MANUAL, executor);
+            batch.getErrorHandler().setEcho(false);
+            try (TokenCache cache = batch.openCache(cacheDirectory, 1 << 20)) {
+                batch.setCache(cache);
+                batch.scanAll(Samples.files());
+
+                for (Path file : Samples.files()) {
+                    ManualScanner scanner = new ManualScanner(Samples.read(file));
+                    scanner.getErrorHandler().setEcho(false);
+                    List<Token> tokens = scanner.scan();
+
+                    TokenStreamReader reader = cache.getTokens(file);
+                    assertNotNull(reader, file.toString());
+                    for (Token token : tokens) {
+                        assertTrue(reader.next());
+                        assertEquals(token.toString(), reader.getToken().toString());
+                    }
+                    assertFalse(reader.next());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void otherScannerCodeMisses() throws IOException {
+
+        TokenCache.Entry entry = new TokenCache.Entry(new EnumMap<>(TokenType.class), new SymbolTable(),
+                new ErrorHandler(), ByteBuffer.wrap(new byte[0]));
+
+        try (TokenCache cache = new TokenCache(cacheDirectory, 1 << 20, "options", ManualScanner.class)) {
+            cache.store(42, entry);
+        }
+        try (TokenCache cache = new TokenCache(cacheDirectory, 1 << 20, "options", ManualScanner.class)) {
+            assertNotNull(cache.load(42));
+        }
+
+        // Same options, code from another class directory (the tests)
+        try (TokenCache cache = new TokenCache(cacheDirectory, 1 << 20, "options", TokenCacheTest.class)) {
+            assertNull(cache.load(42));
+        }
+    }
+
+    @Test
+    void fileRewrittenWhileScanningIsNotStored() throws IOException {
+
+        TokenCache.Entry entry = new TokenCache.Entry(new EnumMap<>(TokenType.class), new SymbolTable(),
+                new ErrorHandler(), ByteBuffer.wrap(new byte[0]));
+        Path file = Files.writeString(cacheDirectory.resolve("source.txt"), "Count = 1\n");
+
+        try (TokenCache cache = new TokenCache(cacheDirectory.resolve("cache"), 1 << 20,
+                "options", ManualScanner.class)) {
+
+            ByteBuffer bytes = MappedFileReader.mapFile(file);
+            long hash = TokenCache.hash(bytes);
+
+            // Rewritten in place, same length: the mapping sees the new bytes
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap("Total = 2\n".getBytes(StandardCharsets.US_ASCII)), 0);
+            }
+            assertFalse(cache.storeIfUnchanged(hash, bytes, entry));
+            assertNull(cache.load(hash));
+
+            long current = TokenCache.hash(bytes);
+            assertEquals(TokenCache.hash(file), current);
+            assertTrue(cache.storeIfUnchanged(current, bytes, entry));
+            assertNotNull(cache.load(current));
+        }
+    }
+
+    @Test
+    void unreadableScannerCodeFails() {
+        // JDK classes have no code source to hash
+        assertThrows(IOException.class,
+                () -> new TokenCache(cacheDirectory, 1 << 20, "options", String.class));
+    }
+}
@@ -0,0 +1,73 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/* Tokens written by TokenStreamWriter read back the same through TokenStreamReader */
+class TokenStreamTest {
+
+    static List<Path> samples() {
+        return Samples.files();
+    }
+
+    @ParameterizedTest
+    @MethodSource("samples")
+    void roundTrip(Path file) throws IOException {
+
+        String program = Samples.read(file);
+
+        // Lazy tokens all keep their start offset
+        ManualScanner reference = new ManualScanner(program);
+        reference.setLazyPositions(true);
+        reference.getErrorHandler().setEcho(false);
+        List<Token> tokens = reference.scan();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ManualScanner scanner = new ManualScanner(program);
+        scanner.getErrorHandler().setEcho(false);
+        try (TokenStreamWriter writer = new TokenStreamWriter(bytes, true)) {
+            scanner.writeTokens(writer);
+            assertEquals(tokens.size(), writer.getTokenCount());
+        }
+
+        TokenStreamReader reader = new TokenStreamReader(ByteBuffer.wrap(bytes.toByteArray()));
+        assertEquals(tokens.size(), reader.getTokenCount());
+        for (Token token : tokens) {
+            reader.next();
+            assertEquals(token.toString(), reader.getToken().toString());
+            assertEquals(token.getStart(), reader.getOffset());
+        }
+    }
+
+    @Test
+    void rejectedTokenLeavesNoTrace() throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TokenStreamWriter writer = new TokenStreamWriter(bytes, true)) {
+            writer.write(TokenType.IDENTIFIER, "Count", 0, 5, 1, 1, 10);
+            assertThrows(IllegalArgumentException.class,
+                    () -> writer.write(TokenType.IDENTIFIER, "Total", 0, 5, 1, 1, 5));
+            writer.write(TokenType.INTEGER_LITERAL, "42", 0, 2, 1, 7, 16);
+        }
+
+        TokenStreamReader reader = new TokenStreamReader(ByteBuffer.wrap(bytes.toByteArray()));
+        assertEquals(2, reader.getTokenCount());
+        reader.next();
+        assertEquals("Count", reader.getLexeme());
+        assertEquals(10, reader.getOffset());
+        reader.next();
+        assertEquals("42", reader.getLexeme());
+        assertEquals(1, reader.getLexemeId());
+        assertEquals(16, reader.getOffset());
+        assertFalse(reader.next());
+    }
+}
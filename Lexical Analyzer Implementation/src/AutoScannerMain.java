@@ -1,5 +1,7 @@
-import java.io.FileReader;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -8,7 +10,30 @@ public class AutoScannerMain {
     private String filename;
     private SymbolTable symbolTable;
     private ErrorHandler errorHandler;
-    private Yylex lexer;
+    private Lexer lexer;
+
+    // Read the file through a memory mapping instead of a FileReader
+    private boolean mapped = false;
+
+    // Run SpecLexer on these tables instead of the generated Yylex
+    private LexerTables tables;
+
+    // Resolve line/column only for tokens that need them (SpecLexer only)
+    private boolean lazyPositions = false;
+
+    /*
+     * Token output: TEXT is Token.toString(), TSV is type, line, column and
+     * lexeme separated by tabs, NONE prints no tokens (--quiet).
+     */
+    public enum OutputFormat { TEXT, TSV, NONE }
+
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    private OutputFormat format = OutputFormat.TEXT;
+    private boolean statsOnly = false;
+
+    // Lex the whole file into a TokenBuffer first, then print from it (--buffer)
+    private boolean buffered = false;
 
     // Statistics
     private int totalTokens = 0;
@@ -29,63 +54,98 @@ public class AutoScannerMain {
         }
     }
 
-    public void scan() {
+    public void setMapped(boolean mapped) {
+        this.mapped = mapped;
+    }
 
-        System.out.println("File: " + filename);
+    /* Tables built from Scanner.flex at run time; null means the generated Yylex */
+    public void setTables(LexerTables tables) {
+        this.tables = tables;
+    }
 
-        try {
+    public void setOutputFormat(OutputFormat format) {
+        this.format = format;
+    }
 
-            lexer = new Yylex(new FileReader(filename));
-            lexer.setSymbolTable(symbolTable);
-            lexer.setErrorHandler(errorHandler);
+    /* Print only the statistics: no tokens, symbol table or error summary */
+    public void setStatsOnly(boolean statsOnly) {
+        this.statsOnly = statsOnly;
+    }
 
-            Token token;
+    public void setLazyPositions(boolean lazyPositions) {
+        this.lazyPositions = lazyPositions;
+    }
 
-            System.out.println("TOKENS OUTPUT:");
-            System.out.println("--------------");
+    public void setBuffered(boolean buffered) {
+        this.buffered = buffered;
+    }
 
-            while ((token = lexer.yylex()) != null) {
+    public ErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
 
-              
+    public void scan() {
 
-                /* Stop at EOF */
-                if (token.getType() == TokenType.EOF) {
-                    break;
-                }
+        System.out.println("File: " + filename);
 
-                /* Print token */
-                System.out.println(token);
+        try {
 
-                /* Update statistics */
-                if (token.getType() != TokenType.ERROR &&
-                    token.getType() != TokenType.WHITESPACE) {
+            boolean printTokens = format != OutputFormat.NONE && !statsOnly;
 
-                    totalTokens++;
+            /* Tokens go through one large buffer; a single builder is reused per line */
+            Writer out = new BufferedWriter(
+                    new OutputStreamWriter(System.out, Charset.defaultCharset()), OUTPUT_BUFFER_SIZE);
+            StringBuilder line = new StringBuilder(128);
 
-                    tokenStats.put(
-                        token.getType(),
-                        tokenStats.getOrDefault(token.getType(), 0) + 1
-                    );
+            if (printTokens) {
+                System.out.println("TOKENS OUTPUT:");
+                System.out.println("--------------");
+            }
 
-                    /* Add identifier to symbol table */
-                    if (token.getType() == TokenType.IDENTIFIER) {
+            if (buffered) {
+                TokenBuffer tokens = tokenize();
+                if (printTokens) {
+                    for (int i = 0; i < tokens.size(); i++) {
+                        line.setLength(0);
+                        format(tokens, i, line).append('\n');
+                        out.append(line);
+                    }
+                }
+            } else {
+                lexer = openLexer();
+                lexer.setSymbolTable(symbolTable);
+                lexer.setErrorHandler(errorHandler);
+
+                Token token;
 
-                        symbolTable.addIdentifier(
-                            token.getLexeme(),
-                            token.getType(),
-                            token.getLine(),
-                            token.getColumn()
-                        );
+                while ((token = lexer.yylex()) != null) {
+
+                    /* Stop at EOF (or once the error limit is reached) */
+                    if (token.getType() == TokenType.EOF || errorHandler.isLimitReached()) {
+                        break;
                     }
+
+                    /* Print token */
+                    if (printTokens) {
+                        line.setLength(0);
+                        format(token, line).append('\n');
+                        out.append(line);
+                    }
+
+                    record(token);
                 }
+
+                /* Get comment count from lexer */
+                commentCount = lexer.getCommentCount();
             }
 
-            /* Get comment count from lexer */
-            commentCount = lexer.getCommentCount();
+            out.flush();
 
             displayStatistics();
-            symbolTable.printTable();
-            errorHandler.printSummary();
+            if (!statsOnly) {
+                symbolTable.printTable();
+                errorHandler.printSummary();
+            }
 
         }
         catch (IOException e) {
@@ -95,9 +155,143 @@ public class AutoScannerMain {
             System.err.println("Scanner error: " + e.getMessage());
             e.printStackTrace();
         }
+        finally {
+            /* Buffered or queued errors must reach the output on every path (--stats-only skips the summary) */
+            errorHandler.flush();
+        }
+    }
+
+    /*
+     * Scan the file without printing, collecting the tokens into a compact
+     * TokenBuffer. Statistics, symbol table and errors are updated as in scan().
+     */
+    public TokenBuffer tokenize() throws IOException {
+
+        try {
+            lexer = openLexer();
+            lexer.setSymbolTable(symbolTable);
+            lexer.setErrorHandler(errorHandler);
+
+            TokenBuffer buffer;
+            if (lexer instanceof SpecLexer && ((SpecLexer) lexer).getText() != null) {
+                buffer = tokenize((SpecLexer) lexer);
+            } else {
+                // Yylex (or streamed input) only hands out Tokens; their lexemes go to the buffer's pool
+                buffer = new TokenBuffer();
+                Token token;
+                while ((token = lexer.yylex()) != null) {
+
+                    if (token.getType() == TokenType.EOF || errorHandler.isLimitReached()) {
+                        break;
+                    }
+
+                    int symbolId = record(token);
+                    buffer.add(token.getType(), token.getLexeme(), token.getLine(), token.getColumn(), symbolId);
+                }
+            }
+
+            commentCount = lexer.getCommentCount();
+            return buffer;
+        }
+        finally {
+            errorHandler.flush();
+        }
     }
 
-   
+    /* The whole input is in memory: no Token objects, entries index the text */
+    private TokenBuffer tokenize(SpecLexer spec) {
+
+        CharSequence text = spec.getText();
+        TokenBuffer buffer = new TokenBuffer(text);
+
+        TokenType type;
+        while ((type = spec.advance()) != TokenType.EOF && !errorHandler.isLimitReached()) {
+
+            int start = spec.getTokenStart();
+            int end = spec.getTokenEnd();
+            int line = spec.getTokenLine();
+            int column = spec.getTokenColumn();
+
+            int symbolId = -1;
+            if (count(type) && type == TokenType.IDENTIFIER) {
+                symbolId = symbolTable.addIdentifier(text, start, end, line, column);
+            }
+            buffer.add(type, start, end - start, line, column, symbolId);
+        }
+        return buffer;
+    }
+
+    private Lexer openLexer() throws IOException {
+
+        if (lazyPositions && tables != null) {
+            // The whole text has to be addressable for the line index
+            SpecLexer spec = new SpecLexer(tables, mapped
+                    ? SourceBuffer.map(Paths.get(filename))
+                    : SourceBuffer.of(new String(Files.readAllBytes(Paths.get(filename)),
+                                                 Charset.defaultCharset())));
+            spec.setLazyPositions(true);
+            return spec;
+        }
+
+        Reader reader = mapped
+                ? new MappedFileReader(Paths.get(filename))
+                : new FileReader(filename);
+        return (tables != null) ? new SpecLexer(tables, reader) : new Yylex(reader);
+    }
+
+    private StringBuilder format(Token token, StringBuilder line) {
+
+        if (format == OutputFormat.TSV) {
+            return line.append(token.getType()).append('\t')
+                       .append(token.getLine()).append('\t')
+                       .append(token.getColumn()).append('\t')
+                       .append(token.getLexeme());
+        }
+        return token.appendTo(line);
+    }
+
+    private StringBuilder format(TokenBuffer tokens, int index, StringBuilder line) {
+
+        if (format == OutputFormat.TSV) {
+            return line.append(tokens.getType(index)).append('\t')
+                       .append(tokens.getLine(index)).append('\t')
+                       .append(tokens.getColumn(index)).append('\t')
+                       .append(tokens.getLexeme(index));
+        }
+        return tokens.appendTo(index, line);
+    }
+
+    /* Update statistics and the symbol table for one token; returns its symbol ID (-1 if none) */
+    private int record(Token token) {
+
+        /* Add identifier to symbol table */
+        if (count(token.getType()) && token.getType() == TokenType.IDENTIFIER) {
+
+            return symbolTable.addIdentifier(
+                token.getLexeme(),
+                token.getType(),
+                token.getLine(),
+                token.getColumn()
+            );
+        }
+        return -1;
+    }
+
+    /* Update statistics for one token; false for tokens that are not counted */
+    private boolean count(TokenType type) {
+
+        if (type == TokenType.ERROR || type == TokenType.WHITESPACE) {
+            return false;
+        }
+
+        totalTokens++;
+
+        tokenStats.put(
+            type,
+            tokenStats.getOrDefault(type, 0) + 1
+        );
+        return true;
+    }
 
     private void displayStatistics() {
 
@@ -143,20 +337,71 @@ public class AutoScannerMain {
         System.out.println("==========================================");
         System.out.println("           AUTO SCANNER MAIN");
         System.out.println("==========================================");
-        System.out.println("Usage: java AutoScannerMain <filename>");
+        System.out.println("Usage: java AutoScannerMain [options] <filename>");
         System.out.println("Example: java AutoScannerMain tests/test1.lang");
+        System.out.println("  --mmap                  memory-map the file instead of reading it");
+        System.out.println("  --spec FILE.flex        build the lexer from a JFlex spec at run time");
+        System.out.println("  --lazy-positions        look up line/column only when needed (Yylex always does)");
+        System.out.println("  --format text|tsv       token output format (default text)");
+        System.out.println("  --quiet                 do not print tokens");
+        System.out.println("  --stats-only            print only the statistics");
+        System.out.println("  --buffer                lex into a TokenBuffer first, then print from it");
+        System.out.println("  --error-mode MODE       sync, buffered or async error output");
+        System.out.println("  --max-errors N          stop scanning after N errors");
         System.out.println("==========================================");
     }
 
     public static void main(String[] args) {
 
-        if (args.length == 0) {
+        boolean mapped = false;
+        ErrorHandler.ReportMode errorMode = ErrorHandler.ReportMode.SYNCHRONOUS;
+        int maxErrors = Integer.MAX_VALUE;
+        OutputFormat format = OutputFormat.TEXT;
+        boolean statsOnly = false;
+        String spec = null;
+        boolean lazyPositions = false;
+        boolean buffered = false;
+        String filename = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--mmap":
+                    mapped = true;
+                    break;
+                case "--error-mode":
+                    errorMode = parseReportMode(args[++i]);
+                    break;
+                case "--max-errors":
+                    maxErrors = Integer.parseInt(args[++i]);
+                    break;
+                case "--format":
+                    format = OutputFormat.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--quiet":
+                    format = OutputFormat.NONE;
+                    break;
+                case "--stats-only":
+                    statsOnly = true;
+                    break;
+                case "--spec":
+                    spec = args[++i];
+                    break;
+                case "--lazy-positions":
+                    lazyPositions = true;
+                    break;
+                case "--buffer":
+                    buffered = true;
+                    break;
+                default:
+                    filename = args[i];
+            }
+        }
+
+        if (filename == null) {
             printUsage();
             return;
         }
 
-        String filename = args[0];
-
         try {
 
             java.io.File file = new java.io.File(filename);
@@ -172,6 +417,34 @@ public class AutoScannerMain {
         }
 
         AutoScannerMain scanner = new AutoScannerMain(filename);
+        scanner.setMapped(mapped);
+        scanner.setOutputFormat(format);
+        scanner.setStatsOnly(statsOnly);
+        scanner.setLazyPositions(lazyPositions);
+        scanner.setBuffered(buffered);
+        if (spec != null) {
+            try {
+                scanner.setTables(LexerTables.load(Paths.get(spec)));
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Spec error: " + e.getMessage());
+                return;
+            }
+        }
+        scanner.getErrorHandler().setReportMode(errorMode);
+        scanner.getErrorHandler().setErrorLimit(maxErrors);
         scanner.scan();
     }
+
+    static ErrorHandler.ReportMode parseReportMode(String mode) {
+        switch (mode.toLowerCase()) {
+            case "sync":
+                return ErrorHandler.ReportMode.SYNCHRONOUS;
+            case "buffered":
+                return ErrorHandler.ReportMode.BUFFERED;
+            case "async":
+                return ErrorHandler.ReportMode.ASYNC;
+            default:
+                throw new IllegalArgumentException("Unknown error mode: " + mode);
+        }
+    }
 }
@@ -0,0 +1,543 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/*
+ * Scans many source files concurrently.
+ *
+ * Every file gets its own scanner, SymbolTable and ErrorHandler on a worker
+ * thread. Results are merged on the calling thread in sorted file order, so
+ * the merged symbol table, error list and statistics do not depend on how
+ * the work was scheduled. A file's own tables are let go once merged (its
+ * FileResult keeps only counts), and a file that cannot be read is
+ * reported without failing the rest of the batch.
+ *
+ * With a shared symbol table each worker folds its file's table into one
+ * ConcurrentSymbolTable (tagged with the file's index) as soon as the file
+ * is scanned, instead of leaving it to the merge on the calling thread. A
+ * file that fails part-way adds none of its identifiers.
+ *
+ * With a TokenCache, files whose contents were scanned before (by the same
+ * scanner with the same options) are loaded from the cache instead of
+ * being re-lexed.
+ */
+public class BatchScanner {
+
+    public enum Engine { MANUAL, JFLEX }
+
+    private final Engine engine;
+    private final ExecutorService executor;
+
+    private final SymbolStore symbolTable;
+    private final boolean sharedSymbols;
+    private final ErrorHandler errorHandler = new ErrorHandler();
+    private int maxErrorsPerFile = Integer.MAX_VALUE;
+    private boolean panicMode = false;
+    private TokenCache cache;
+    private final Map<TokenType, Integer> tokenStats = new EnumMap<>(TokenType.class);
+
+    private int filesScanned = 0;
+    private long totalTokens = 0;
+    private long totalBytes = 0;
+
+    public BatchScanner(Engine engine, ExecutorService executor) {
+        this(engine, executor, false);
+    }
+
+    public BatchScanner(Engine engine, ExecutorService executor, boolean sharedSymbols) {
+
+        this.engine = engine;
+        this.executor = executor;
+        this.sharedSymbols = sharedSymbols;
+        this.symbolTable = sharedSymbols ? new ConcurrentSymbolTable() : new SymbolTable();
+
+        for (TokenType type : TokenType.values()) {
+            tokenStats.put(type, 0);
+        }
+    }
+
+    /* What one worker produces for one file */
+    public static class FileResult {
+
+        private final Path file;
+        private long bytes;
+        private final Map<TokenType, Integer> tokenStats = new EnumMap<>(TokenType.class);
+        private int totalTokens = 0;
+        private int errorCount = 0;
+        private SymbolTable symbolTable;        // dropped once merged
+        private ErrorHandler errorHandler;      // dropped once merged
+        private String failure;
+        private boolean cached = false;
+
+        private FileResult(Path file) {
+            this.file = file;
+        }
+
+        private void count(TokenType type) {
+            totalTokens++;
+            tokenStats.merge(type, 1, Integer::sum);
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public int getTotalTokens() {
+            return totalTokens;
+        }
+
+        public int getErrorCount() {
+            return errorCount;
+        }
+
+        /* True if the result came from the TokenCache */
+        public boolean isCached() {
+            return cached;
+        }
+    }
+
+    /* Scan all files and merge the results; returns the per-file results in file order */
+    public List<FileResult> scanAll(List<Path> files) throws InterruptedException {
+
+        List<Future<FileResult>> futures = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            SymbolStore shared = sharedSymbols
+                    ? ((ConcurrentSymbolTable) symbolTable).forSource(i)
+                    : null;
+            futures.add(executor.submit(() -> scanFile(file, shared)));
+        }
+
+        List<FileResult> results = new ArrayList<>();
+        for (Future<FileResult> future : futures) {
+            try {
+                FileResult result = future.get();
+                merge(result);
+                results.add(result);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Worker failed", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /*
+     * Scan one file into a table of its own. Once the file has been scanned
+     * completely that table is folded into shared (this file's view of the
+     * shared table) if there is one, or merged later otherwise.
+     */
+    private FileResult scanFile(Path file, SymbolStore shared) {
+
+        FileResult result = new FileResult(file);
+
+        long hash = 0;
+        TokenStreamWriter tokens = null;
+        ByteArrayOutputStream tokenBytes = null;
+        SymbolTable own = new SymbolTable();
+
+        try {
+            // One mapping, both hashed and lexed, so the entry matches its key
+            ByteBuffer bytes = MappedFileReader.mapFile(file);
+            result.bytes = bytes.limit();
+
+            if (cache != null) {
+                hash = TokenCache.hash(bytes);
+                TokenCache.Entry entry = cache.load(hash);
+                if (entry != null) {
+                    return loadCached(result, entry, shared);
+                }
+
+                // The entry needs this file's symbols on their own
+                tokenBytes = new ByteArrayOutputStream();
+                tokens = new TokenStreamWriter(tokenBytes, false);
+            }
+
+            switch (engine) {
+
+                case MANUAL: {
+                    ManualScanner scanner = new ManualScanner(SourceBuffer.map(bytes));
+                    scanner.setSymbolTable(own);
+                    scanner.setPanicMode(panicMode);
+                    scanner.getErrorHandler().setEcho(false);
+                    scanner.getErrorHandler().setErrorLimit(maxErrorsPerFile);
+
+                    Token token;
+                    while ((token = scanner.nextToken()) != null) {
+                        result.count(token.getType());
+                        if (tokens != null) {
+                            tokens.write(token);
+                        }
+                    }
+
+                    result.errorHandler = scanner.getErrorHandler();
+                    break;
+                }
+
+                case JFLEX: {
+                    ErrorHandler handler = new ErrorHandler();
+                    handler.setEcho(false);
+                    handler.setErrorLimit(maxErrorsPerFile);
+
+                    Yylex lexer = new Yylex(new MappedFileReader(bytes));
+                    lexer.setSymbolTable(own);
+                    lexer.setErrorHandler(handler);
+
+                    /* Same bookkeeping as AutoScannerMain */
+                    Token token;
+                    while ((token = lexer.yylex()) != null
+                            && token.getType() != TokenType.EOF
+                            && !handler.isLimitReached()) {
+
+                        if (token.getType() == TokenType.ERROR ||
+                            token.getType() == TokenType.WHITESPACE) {
+                            continue;
+                        }
+
+                        result.count(token.getType());
+                        if (tokens != null) {
+                            tokens.write(token);
+                        }
+
+                        if (token.getType() == TokenType.IDENTIFIER) {
+                            own.addIdentifier(token.getLexeme(), token.getType(),
+                                    token.getLine(), token.getColumn());
+                        }
+                    }
+
+                    result.errorHandler = handler;
+                    break;
+                }
+            }
+
+            if (cache != null) {
+                tokens.close();
+                cache.storeIfUnchanged(hash, bytes, new TokenCache.Entry(result.tokenStats, own,
+                        result.errorHandler, ByteBuffer.wrap(tokenBytes.toByteArray())));
+            }
+            if (shared == null) {
+                result.symbolTable = own;
+            } else {
+                shared.addAll(own);
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            result.failure = e.toString();
+        }
+
+        return result;
+    }
+
+    private FileResult loadCached(FileResult result, TokenCache.Entry entry, SymbolStore shared) {
+
+        result.cached = true;
+        for (Map.Entry<TokenType, Integer> stat : entry.getTokenStats().entrySet()) {
+            result.totalTokens += stat.getValue();
+            result.tokenStats.put(stat.getKey(), stat.getValue());
+        }
+
+        if (shared != null) {
+            shared.addAll(entry.getSymbolTable());
+        } else {
+            result.symbolTable = entry.getSymbolTable();
+        }
+        result.errorHandler = entry.getErrorHandler();
+        return result;
+    }
+
+    private void merge(FileResult result) {
+
+        filesScanned++;
+        totalBytes += result.bytes;
+
+        if (result.errorHandler != null) {
+            result.errorCount = result.errorHandler.getErrorCount();
+        }
+
+        if (result.failure != null) {
+            System.err.println("Scanner error in " + result.file + ": " + result.failure);
+        } else {
+            totalTokens += result.totalTokens;
+            for (Map.Entry<TokenType, Integer> entry : result.tokenStats.entrySet()) {
+                tokenStats.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+
+            if (!sharedSymbols) {
+                symbolTable.addAll(result.symbolTable);
+            }
+            errorHandler.addAll(result.errorHandler);
+        }
+
+        // The batch's tables hold the file's symbols and errors now; keep only the counts
+        result.symbolTable = null;
+        result.errorHandler = null;
+    }
+
+    /* Stop scanning a file after this many errors */
+    public void setMaxErrorsPerFile(int maxErrors) {
+        this.maxErrorsPerFile = maxErrors;
+    }
+
+    /* Panic-mode error recovery in the manual scanner */
+    public void setPanicMode(boolean panicMode) {
+        this.panicMode = panicMode;
+    }
+
+    /* Reuse and record results in a cache opened with openCache() */
+    public void setCache(TokenCache cache) {
+        this.cache = cache;
+    }
+
+    /* A cache for this scanner's engine and options (set them first) */
+    public TokenCache openCache(Path directory, long maxBytes) throws IOException {
+
+        String options = engine + " panic=" + panicMode + " max-errors=" + maxErrorsPerFile;
+        Class<?> scanner = (engine == Engine.JFLEX) ? Yylex.class : ManualScanner.class;
+        return new TokenCache(directory, maxBytes, options, scanner);
+    }
+
+    public SymbolStore getSymbolTable() {
+        return symbolTable;
+    }
+
+    public ErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+
+    /* ---------- Input expansion ---------- */
+
+    /*
+     * Expand directories (recursively, .y and .lang files) and glob patterns
+     * such as "test/*.lang" or "src/**.y" into a sorted list of files.
+     */
+    public static List<Path> expand(List<String> args) throws IOException {
+
+        SortedSet<Path> files = new TreeSet<>();
+
+        for (String arg : args) {
+
+            if (isGlob(arg)) {
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + arg);
+                try (Stream<Path> walk = Files.walk(globBase(arg))) {
+                    walk.filter(Files::isRegularFile)
+                        .filter(matcher::matches)
+                        .forEach(files::add);
+                }
+            }
+            else if (Files.isDirectory(Paths.get(arg))) {
+                try (Stream<Path> walk = Files.walk(Paths.get(arg))) {
+                    walk.filter(Files::isRegularFile)
+                        .filter(BatchScanner::isSourceFile)
+                        .forEach(files::add);
+                }
+            }
+            else {
+                files.add(Paths.get(arg));
+            }
+        }
+
+        return new ArrayList<>(files);
+    }
+
+    private static boolean isGlob(String arg) {
+        return arg.indexOf('*') >= 0 || arg.indexOf('?') >= 0
+                || arg.indexOf('[') >= 0 || arg.indexOf('{') >= 0;
+    }
+
+    /* Directory part of a glob before the first wildcard */
+    private static Path globBase(String glob) {
+
+        int wildcard = glob.length();
+        for (char c : new char[] {'*', '?', '[', '{'}) {
+            int index = glob.indexOf(c);
+            if (index >= 0 && index < wildcard) {
+                wildcard = index;
+            }
+        }
+
+        int slash = glob.lastIndexOf('/', wildcard);
+        if (slash < 0) {
+            return Paths.get(".");
+        }
+        return Paths.get(slash == 0 ? "/" : glob.substring(0, slash));
+    }
+
+    private static boolean isSourceFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(".y") || name.endsWith(".lang");
+    }
+
+    /* ---------- Executors ---------- */
+
+    /* Virtual threads when the runtime has them (JDK 21+), otherwise null */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /* ---------- Reporting ---------- */
+
+    private void displayStatistics(List<FileResult> results, long elapsedNanos) {
+
+        System.out.println("\n==========================================");
+        System.out.println("           BATCH SCANNER STATS");
+        System.out.println("==========================================");
+
+        for (FileResult result : results) {
+            System.out.printf("  %-40s: %d tokens, %d errors\n",
+                    result.file, result.totalTokens, result.getErrorCount());
+        }
+
+        double seconds = elapsedNanos / 1e9;
+
+        System.out.println("------------------------------------------");
+        System.out.printf("%-30s: %d\n", "Files scanned", filesScanned);
+        System.out.printf("%-30s: %d\n", "Total tokens processed", totalTokens);
+        System.out.printf("%-30s: %d\n", "Total errors", errorHandler.getErrorCount());
+        System.out.printf("%-30s: %.3f\n", "Elapsed seconds", seconds);
+        System.out.printf("%-30s: %.1f\n", "Files/sec", filesScanned / seconds);
+        System.out.printf("%-30s: %.1f\n", "Tokens/sec", totalTokens / seconds);
+        System.out.printf("%-30s: %.1f\n", "MB/sec", totalBytes / 1e6 / seconds);
+
+        if (cache != null) {
+            System.out.printf("%-30s: %d\n", "Cache hits", cache.getHits());
+            System.out.printf("%-30s: %d\n", "Cache misses", cache.getMisses());
+        }
+
+        System.out.println("\n------------------------------------------");
+        System.out.println("TOKEN TYPE COUNTS:");
+        System.out.println("------------------------------------------");
+
+        for (Map.Entry<TokenType, Integer> entry : tokenStats.entrySet()) {
+            if (entry.getValue() > 0) {
+                System.out.printf("  %-20s: %d\n", entry.getKey(), entry.getValue());
+            }
+        }
+
+        System.out.println("==========================================\n");
+    }
+
+    public static void printUsage() {
+
+        System.out.println("==========================================");
+        System.out.println("           BATCH SCANNER");
+        System.out.println("==========================================");
+        System.out.println("Usage: java BatchScanner [options] <dir|file|glob>...");
+        System.out.println("Example: java BatchScanner --threads 8 ../test \"../test/*.lang\"");
+        System.out.println("  --engine manual|jflex   scanner to run (default manual)");
+        System.out.println("  --threads N             worker threads (default: all cores)");
+        System.out.println("  --virtual               one virtual thread per file (JDK 21+)");
+        System.out.println("  --errors                print every lexical error after merging");
+        System.out.println("  --shared-symbols        workers fill one concurrent symbol table");
+        System.out.println("  --error-mode MODE       sync, buffered or async output for --errors");
+        System.out.println("  --max-errors N          stop scanning a file after N errors");
+        System.out.println("  --panic                 skip to whitespace after an error (manual engine)");
+        System.out.println("  --cache DIR             reuse results for unchanged files from DIR");
+        System.out.println("  --cache-size MB         evict least recently used entries above this (default 256)");
+        System.out.println("==========================================");
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        Engine engine = Engine.MANUAL;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean virtual = false;
+        boolean printErrors = false;
+        boolean sharedSymbols = false;
+        ErrorHandler.ReportMode errorMode = ErrorHandler.ReportMode.SYNCHRONOUS;
+        int maxErrors = Integer.MAX_VALUE;
+        boolean panic = false;
+        Path cacheDirectory = null;
+        long cacheSize = 256;
+        List<String> inputs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--engine":
+                    engine = Engine.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--virtual":
+                    virtual = true;
+                    break;
+                case "--errors":
+                    printErrors = true;
+                    break;
+                case "--shared-symbols":
+                    sharedSymbols = true;
+                    break;
+                case "--error-mode":
+                    errorMode = AutoScannerMain.parseReportMode(args[++i]);
+                    break;
+                case "--max-errors":
+                    maxErrors = Integer.parseInt(args[++i]);
+                    break;
+                case "--panic":
+                    panic = true;
+                    break;
+                case "--cache":
+                    cacheDirectory = Paths.get(args[++i]);
+                    break;
+                case "--cache-size":
+                    cacheSize = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    inputs.add(args[i]);
+            }
+        }
+
+        if (inputs.isEmpty()) {
+            printUsage();
+            return;
+        }
+
+        List<Path> files = expand(inputs);
+
+        ExecutorService executor = virtual ? newVirtualThreadExecutor() : null;
+        if (virtual && executor == null) {
+            System.err.println("Virtual threads not available; using " + threads + " platform threads");
+        }
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads);
+        }
+
+        BatchScanner batch = new BatchScanner(engine, executor, sharedSymbols);
+        batch.getErrorHandler().setEcho(printErrors);
+        batch.getErrorHandler().setReportMode(errorMode);
+        batch.setMaxErrorsPerFile(maxErrors);
+        batch.setPanicMode(panic);
+
+        TokenCache cache = null;
+        if (cacheDirectory != null) {
+            cache = batch.openCache(cacheDirectory, cacheSize << 20);
+            batch.setCache(cache);
+        }
+
+        long start = System.nanoTime();
+        List<FileResult> results;
+        try {
+            results = batch.scanAll(files);
+        } finally {
+            executor.shutdown();
+            batch.getErrorHandler().flush();
+            if (cache != null) {
+                cache.close();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        batch.displayStatistics(results, elapsed);
+        batch.getSymbolTable().printTable();
+        batch.getErrorHandler().printSummary();
+    }
+}
@@ -0,0 +1,94 @@
+import java.nio.ByteBuffer;
+
+/*
+ * Finds where a run of characters from one small set ends, so ManualScanner
+ * can cross whitespace, comment and string bodies, digit runs and identifier
+ * tails in one call and only run its DFA at token boundaries.
+ *
+ * This class is the scalar version. VectorRuns does the same with the
+ * jdk.incubator.vector API, testing a whole vector of characters per
+ * compare; get() returns it when the JVM was started with
+ * --add-modules jdk.incubator.vector. Otherwise get() returns SwarRuns,
+ * which tests 8 bytes of mapped input per long and chars one at a time.
+ *
+ * SPACES, DIGITS and IDENTIFIER_TAIL only hold ASCII characters, so those
+ * runs stop at a non-ASCII character and the DFA decides what to do with
+ * it (Character.isDigit and isLowerCase also accept non-ASCII digits and
+ * letters). LINE and STRING_BODY are "anything but" sets.
+ */
+public class CharRuns {
+
+    public static final int SPACES = 0;            // ' '
+    public static final int DIGITS = 1;            // [0-9]
+    public static final int IDENTIFIER_TAIL = 2;   // [a-z0-9_], the q10 loop
+    public static final int LINE = 3;              // anything but '\n' and '\r' (comment bodies)
+    public static final int STRING_BODY = 4;       // anything but '"', '\\' and '\n', the q5 loop
+
+    private static final CharRuns INSTANCE = load();
+
+    CharRuns() {
+    }
+
+    public static CharRuns get() {
+        return INSTANCE;
+    }
+
+    /* Scalar runs, even if the vector version is available (for comparison) */
+    public static CharRuns scalar() {
+        return new CharRuns();
+    }
+
+    /* Word-at-a-time runs over bytes, even if the vector version is available */
+    public static CharRuns swar() {
+        return new SwarRuns();
+    }
+
+    private static CharRuns load() {
+
+        if (Boolean.parseBoolean(System.getProperty("why.vector", "true"))
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (CharRuns) Class.forName("VectorRuns").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Compiled without the module: fall back to SWAR
+            }
+        }
+        return new SwarRuns();
+    }
+
+    /* Is this the vector version? */
+    public boolean isVectorized() {
+        return false;
+    }
+
+    public static boolean contains(int set, char c) {
+        switch (set) {
+            case SPACES:
+                return c == ' ';
+            case DIGITS:
+                return c >= '0' && c <= '9';
+            case IDENTIFIER_TAIL:
+                return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_';
+            case STRING_BODY:
+                return c != '"' && c != '\\' && c != '\n';
+            default:
+                return c != '\n' && c != '\r';
+        }
+    }
+
+    /* First index in chars[from, to) whose character is not in set, or to */
+    public int runEnd(char[] chars, int from, int to, int set) {
+        while (from < to && contains(set, chars[from])) {
+            from++;
+        }
+        return from;
+    }
+
+    /* Same over ASCII bytes (absolute indexes into bytes) */
+    public int runEnd(ByteBuffer bytes, int from, int to, int set) {
+        while (from < to && contains(set, (char) bytes.get(from))) {
+            from++;
+        }
+        return from;
+    }
+}
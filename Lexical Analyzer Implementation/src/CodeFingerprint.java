@@ -0,0 +1,94 @@
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+/*
+ * Hash of the compiled code a class was loaded from, for on-disk caches
+ * whose contents depend on that code (TokenCache entries, LexerTables
+ * .dfa files). It covers the whole jar, or every .class file under the
+ * class directory, so classes the scanner only reaches indirectly
+ * (NumberDecoder, CharRuns, SymbolTable, ErrorHandler, ...) are covered
+ * too, and any rebuild invalidates the cache.
+ *
+ * Code that cannot be read fails with an IOException; a cache must not be
+ * trusted when it is unknown which code filled it.
+ */
+final class CodeFingerprint {
+
+    // Code source location -> hash; the code does not change while the JVM runs
+    private static final Map<String, Long> HASHES = new ConcurrentHashMap<>();
+
+    private CodeFingerprint() {
+    }
+
+    /* CRC32C and CRC32 of the code type was loaded from, 64 bits together */
+    static long of(Class<?> type) throws IOException {
+
+        Path location = location(type);
+        Long hash = HASHES.get(location.toString());
+        if (hash == null) {
+            hash = hash(location);
+            HASHES.put(location.toString(), hash);
+        }
+        return hash;
+    }
+
+    private static Path location(Class<?> type) throws IOException {
+
+        CodeSource source = type.getProtectionDomain().getCodeSource();
+        URL url = (source == null) ? null : source.getLocation();
+        if (url == null) {
+            throw new IOException("No code source for " + type.getName());
+        }
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new IOException("Cannot locate the code of " + type.getName() + ": " + url, e);
+        }
+    }
+
+    private static long hash(Path location) throws IOException {
+
+        CRC32C crc32c = new CRC32C();
+        CRC32 crc32 = new CRC32();
+
+        if (Files.isDirectory(location)) {
+            // Every class file, in a fixed order, each preceded by its path
+            List<Path> classes;
+            try (Stream<Path> files = Files.walk(location)) {
+                classes = files.filter(file -> file.toString().endsWith(".class"))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+            if (classes.isEmpty()) {
+                throw new IOException("No class files under " + location);
+            }
+            for (Path file : classes) {
+                byte[] name = location.relativize(file).toString().getBytes(StandardCharsets.UTF_8);
+                byte[] code = Files.readAllBytes(file);
+                crc32c.update(name);
+                crc32.update(name);
+                crc32c.update(code);
+                crc32.update(code);
+            }
+        } else {
+            byte[] jar = Files.readAllBytes(location);
+            crc32c.update(jar);
+            crc32.update(jar);
+        }
+
+        return (crc32c.getValue() << 32) | crc32.getValue();
+    }
+}
@@ -0,0 +1,329 @@
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Thread-safe SymbolStore that several scanners can feed at once.
+ *
+ * Names are spread over independently locked shards (each with its own
+ * IdentifierPool), so threads only contend when they intern names that
+ * hash to the same shard. Frequencies are LongAdders and every symbol has
+ * its own append-only occurrence log; neither needs the shard lock.
+ *
+ * A symbol ID encodes the shard and the name's index in it, so getSymbol(),
+ * lookup() and findUses() go straight to one symbol and only sort that
+ * symbol's occurrences. IDs are stable but not dense.
+ *
+ * Arrival order depends on scheduling, so the read side never uses it:
+ * occurrences are ordered by (source, line, column), where source is the
+ * ordinal handed to forSource() (e.g. the file's position in a sorted
+ * file list), and entries()/printTable() list symbols by first occurrence.
+ * The output is therefore the same however the work was interleaved.
+ */
+public class ConcurrentSymbolTable implements SymbolStore {
+
+    private static final int SHARDS = 64;      // power of two
+
+    private final Shard[] shards = new Shard[SHARDS];
+
+    public ConcurrentSymbolTable() {
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    private static final class Shard {
+        final IdentifierPool pool = new IdentifierPool();
+        final List<Entry> entries = new ArrayList<>();
+    }
+
+    private static final class Entry {
+
+        final int id;
+        final String name;
+        final LongAdder frequency = new LongAdder();
+
+        // Append-only occurrence log: packed (line << 32 | column) plus source ordinal
+        private long[] positions = new long[4];
+        private int[] sources = new int[4];
+        private int count = 0;
+
+        Entry(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        synchronized void add(int source, int line, int column) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+                sources = Arrays.copyOf(sources, count * 2);
+            }
+            positions[count] = ((long) line << 32) | (column & 0xFFFFFFFFL);
+            sources[count] = source;
+            count++;
+        }
+
+        /* This symbol with its occurrences sorted by (source, line, column) */
+        synchronized Listed list() {
+
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> sources[a] != sources[b]
+                    ? Integer.compare(sources[a], sources[b])
+                    : Long.compare(positions[a], positions[b]));
+
+            long[] sorted = new long[count];
+            for (int i = 0; i < count; i++) {
+                sorted[i] = positions[order[i]];
+            }
+            int firstSource = (count == 0) ? Integer.MAX_VALUE : sources[order[0]];
+            return new Listed(firstSource, new SymbolTable.SymbolInfo(id, name, sorted, count));
+        }
+    }
+
+    // A symbol's info and the source of its first occurrence, for ordering symbols
+    private static final class Listed {
+
+        final int firstSource;
+        final SymbolTable.SymbolInfo info;
+
+        Listed(int firstSource, SymbolTable.SymbolInfo info) {
+            this.firstSource = firstSource;
+            this.info = info;
+        }
+    }
+
+    /* ---------- Writing ---------- */
+
+    @Override
+    public int addIdentifier(CharSequence source, int start, int end, int line, int column) {
+        return add(0, source, start, end, line, column);
+    }
+
+    /* Symbol ID of the identifier text[start, end) seen in the given source */
+    public int add(int source, CharSequence text, int start, int end, int line, int column) {
+
+        int hash = IdentifierPool.hash(text, start, end);
+        int index = (hash ^ (hash >>> 16)) & (SHARDS - 1);
+        Shard shard = shards[index];
+
+        Entry entry;
+        synchronized (shard) {
+            int localId = shard.pool.intern(text, start, end);
+            if (localId == shard.entries.size()) {
+                // Stable for the lifetime of the table, but not dense
+                shard.entries.add(new Entry(localId * SHARDS + index, shard.pool.getName(localId)));
+            }
+            entry = shard.entries.get(localId);
+        }
+
+        entry.frequency.increment();
+        entry.add(source, line, column);
+        return entry.id;
+    }
+
+    @Override
+    public int[] addAll(SymbolTable other) {
+        return addAll(0, other);
+    }
+
+    private int[] addAll(int source, SymbolTable other) {
+
+        int[] ids = other.newIdMap();
+
+        for (SymbolTable.SymbolInfo info : other.entries()) {
+            String name = info.getName();
+            int id = -1;
+            for (int i = 0; i < info.getOccurrenceCount(); i++) {
+                id = add(source, name, 0, name.length(), info.getLine(i), info.getColumn(i));
+            }
+            ids[info.getId()] = id;
+        }
+        return ids;
+    }
+
+    /*
+     * A SymbolStore that records into this one, tagging every occurrence
+     * with the given source ordinal. Give each file its own view when
+     * scanning files in parallel.
+     */
+    public SymbolStore forSource(int source) {
+        return new SourceView(source);
+    }
+
+    private final class SourceView implements SymbolStore {
+
+        private final int source;
+
+        SourceView(int source) {
+            this.source = source;
+        }
+
+        @Override
+        public int addIdentifier(CharSequence text, int start, int end, int line, int column) {
+            return add(source, text, start, end, line, column);
+        }
+
+        @Override
+        public int[] addAll(SymbolTable other) {
+            return ConcurrentSymbolTable.this.addAll(source, other);
+        }
+
+        @Override
+        public List<SymbolTable.SymbolInfo> entries() {
+            return ConcurrentSymbolTable.this.entries();
+        }
+
+        @Override
+        public SymbolTable.SymbolInfo lookup(String name) {
+            return ConcurrentSymbolTable.this.lookup(name);
+        }
+
+        @Override
+        public List<String> findUses(String name) {
+            return ConcurrentSymbolTable.this.findUses(name);
+        }
+
+        @Override
+        public SymbolTable.SymbolInfo getSymbol(int id) {
+            return ConcurrentSymbolTable.this.getSymbol(id);
+        }
+
+        @Override
+        public String getName(int id) {
+            return ConcurrentSymbolTable.this.getName(id);
+        }
+
+        @Override
+        public void printTable() {
+            ConcurrentSymbolTable.this.printTable();
+        }
+
+        @Override
+        public void printCrossReference() {
+            ConcurrentSymbolTable.this.printCrossReference();
+        }
+
+        @Override
+        public int getSize() {
+            return ConcurrentSymbolTable.this.getSize();
+        }
+    }
+
+    /* ---------- Reading ---------- */
+
+    /* Current frequency of a name without sorting its occurrences (0 if unknown) */
+    public long getFrequency(String name) {
+        Entry entry = find(name);
+        return (entry == null) ? 0 : entry.frequency.sum();
+    }
+
+    @Override
+    public String getName(int id) {
+        return entry(id).name;
+    }
+
+    @Override
+    public SymbolTable.SymbolInfo getSymbol(int id) {
+        return entry(id).list().info;
+    }
+
+    @Override
+    public SymbolTable.SymbolInfo lookup(String name) {
+        Entry entry = find(name);
+        return (entry == null) ? null : entry.list().info;
+    }
+
+    @Override
+    public List<String> findUses(String name) {
+        SymbolTable.SymbolInfo info = lookup(name);
+        return (info == null) ? Collections.emptyList() : info.getLocations();
+    }
+
+    @Override
+    public void printTable() {
+        SymbolTable.printTable(entries());
+    }
+
+    @Override
+    public void printCrossReference() {
+        SymbolTable.printCrossReference(entries());
+    }
+
+    @Override
+    public int getSize() {
+        int size = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                size += shard.entries.size();
+            }
+        }
+        return size;
+    }
+
+    private Entry entry(int id) {
+        Shard shard = shards[id & (SHARDS - 1)];
+        synchronized (shard) {
+            int localId = id / SHARDS;
+            if (id < 0 || localId >= shard.entries.size()) {
+                throw new IndexOutOfBoundsException("Symbol ID " + id);
+            }
+            return shard.entries.get(localId);
+        }
+    }
+
+    private Entry find(String name) {
+        int hash = name.hashCode();
+        Shard shard = shards[(hash ^ (hash >>> 16)) & (SHARDS - 1)];
+        synchronized (shard) {
+            int localId = shard.pool.find(name);
+            return (localId < 0) ? null : shard.entries.get(localId);
+        }
+    }
+
+    /*
+     * Every symbol with its current occurrences, in deterministic order:
+     * by first occurrence (ties broken by name), each symbol's occurrences
+     * by (source, line, column). IDs are this table's stable IDs. Sorts
+     * every symbol, so it costs as much as the table is large.
+     */
+    @Override
+    public List<SymbolTable.SymbolInfo> entries() {
+
+        List<Entry> all = new ArrayList<>();
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                all.addAll(shard.entries);
+            }
+        }
+
+        List<Listed> listed = new ArrayList<>(all.size());
+        for (Entry entry : all) {
+            Listed symbol = entry.list();
+            // A name can be interned a moment before its first occurrence is logged
+            if (symbol.info.getOccurrenceCount() > 0) {
+                listed.add(symbol);
+            }
+        }
+
+        listed.sort((a, b) -> {
+            if (a.firstSource != b.firstSource) {
+                return Integer.compare(a.firstSource, b.firstSource);
+            }
+            if (a.info.getFirstLine() != b.info.getFirstLine()) {
+                return Integer.compare(a.info.getFirstLine(), b.info.getFirstLine());
+            }
+            if (a.info.getFirstColumn() != b.info.getFirstColumn()) {
+                return Integer.compare(a.info.getFirstColumn(), b.info.getFirstColumn());
+            }
+            return a.info.getName().compareTo(b.info.getName());
+        });
+
+        List<SymbolTable.SymbolInfo> infos = new ArrayList<>(listed.size());
+        for (Listed symbol : listed) {
+            infos.add(symbol.info);
+        }
+        return infos;
+    }
+}
@@ -0,0 +1,366 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+ * Seeded generator for large Why programs (benchmarks and stress tests).
+ *
+ * Every token category from docs/LanguageGrammar.txt has a weight, plus a
+ * set of deliberately invalid categories. The same seed, weights and size
+ * always produce the same program, and output is streamed so the size is
+ * only limited by the disk.
+ */
+public class CorpusGenerator {
+
+    public enum Category {
+
+        /* Valid tokens */
+        IDENTIFIER,             // [A-Z][a-z0-9_]{0,30}
+        INTEGER,                // [+-]?[0-9]+
+        FLOAT,                  // [+-]?[0-9]+\.[0-9]{1,6}([eE][+-]?[0-9]+)?
+        STRING,                 // "..." with \" \\ \n \t \r escapes
+        BOOLEAN,                // true | false
+        COMMENT,                // ## ... up to end of line
+
+        /* Lexical errors */
+        MIXED_CASE_IDENTIFIER,  // MyVariable
+        LOWERCASE_IDENTIFIER,   // count
+        IDENTIFIER_TOO_LONG,    // more than 31 characters
+        MALFORMED_INTEGER,      // 12abc
+        TOO_MANY_DECIMALS,      // 1.2345678
+        UNTERMINATED_STRING,    // "abc<newline>
+        INVALID_ESCAPE,         // "bad\q"
+        INVALID_CHARACTER;      // @ $ % ...
+
+        public boolean isError() {
+            return ordinal() >= MIXED_CASE_IDENTIFIER.ordinal();
+        }
+    }
+
+    private static final String IDENTIFIER_BODY = "abcdefghijklmnopqrstuvwxyz0123456789_";
+    private static final String STRING_CHARS =
+            "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 .,:;!?()";
+    private static final String ESCAPES = "\"\\ntr";
+    private static final String INVALID_CHARACTERS = "@$%&*^~`|;";
+
+    // Keep lines readable; a newline is forced once a line gets this long
+    private static final int MAX_LINE_LENGTH = 100;
+
+    private final long seed;
+    private final int[] weights = new int[Category.values().length];
+
+    public CorpusGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public CorpusGenerator setWeight(Category category, int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Negative weight for " + category);
+        }
+        weights[category.ordinal()] = weight;
+        return this;
+    }
+
+    public int getWeight(Category category) {
+        return weights[category.ordinal()];
+    }
+
+    /*
+     * Named distributions: IDENTIFIERS, NUMBERS, STRINGS, COMMENTS (each
+     * dominated by one kind of token), MIXED (all valid categories) and
+     * INVALID (mixed, with a third of the tokens being errors).
+     */
+    public static CorpusGenerator preset(String name, long seed) {
+
+        CorpusGenerator generator = new CorpusGenerator(seed)
+                .setWeight(Category.IDENTIFIER, 30)
+                .setWeight(Category.INTEGER, 15)
+                .setWeight(Category.FLOAT, 15)
+                .setWeight(Category.STRING, 15)
+                .setWeight(Category.BOOLEAN, 10)
+                .setWeight(Category.COMMENT, 15);
+
+        switch (name.toUpperCase()) {
+            case "IDENTIFIERS":
+                return generator.setWeight(Category.IDENTIFIER, 600);
+            case "NUMBERS":
+                return generator.setWeight(Category.INTEGER, 300).setWeight(Category.FLOAT, 300);
+            case "STRINGS":
+                return generator.setWeight(Category.STRING, 600);
+            case "COMMENTS":
+                return generator.setWeight(Category.COMMENT, 600);
+            case "MIXED":
+                return generator;
+            case "INVALID":
+                for (Category category : Category.values()) {
+                    if (category.isError()) {
+                        generator.setWeight(category, 6);
+                    }
+                }
+                return generator;
+            default:
+                throw new IllegalArgumentException("Unknown corpus preset: " + name);
+        }
+    }
+
+    /* Apply "identifier=30,integer=10,..." on top of the current weights */
+    public CorpusGenerator setWeights(String spec) {
+
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Bad weight: " + entry);
+            }
+            setWeight(Category.valueOf(parts[0].trim().toUpperCase()),
+                      Integer.parseInt(parts[1].trim()));
+        }
+        return this;
+    }
+
+    /* Generate at least sizeChars characters (the last token is completed) */
+    public String generate(int sizeChars) {
+
+        StringBuilder program = new StringBuilder(sizeChars + 128);
+        try {
+            generate(program, sizeChars);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);   // StringBuilder does not throw
+        }
+        return program.toString();
+    }
+
+    public void generate(Appendable out, long sizeChars) throws IOException {
+
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        if (total == 0) {
+            throw new IllegalStateException("All category weights are zero");
+        }
+
+        Random random = new Random(seed);
+        StringBuilder token = new StringBuilder(64);
+        long written = 0;
+        int lineLength = 0;
+
+        while (written < sizeChars) {
+
+            Category category = pick(random, total);
+            token.setLength(0);
+            emit(category, random, token);
+
+            out.append(token);
+            written += token.length();
+            lineLength += token.length();
+
+            /* Comments and broken strings already run to the end of the line */
+            if (category == Category.COMMENT || category == Category.UNTERMINATED_STRING
+                    || lineLength >= MAX_LINE_LENGTH || random.nextInt(8) == 0) {
+                out.append('\n');
+                lineLength = 0;
+            } else {
+                out.append(random.nextInt(6) == 0 ? '\t' : ' ');
+                lineLength++;
+            }
+            written++;
+        }
+    }
+
+    private Category pick(Random random, int total) {
+
+        int r = random.nextInt(total);
+        for (Category category : Category.values()) {
+            r -= weights[category.ordinal()];
+            if (r < 0) {
+                return category;
+            }
+        }
+        throw new AssertionError();
+    }
+
+    private static void emit(Category category, Random random, StringBuilder out) {
+
+        switch (category) {
+
+            case IDENTIFIER:
+                out.append((char) ('A' + random.nextInt(26)));
+                appendFrom(IDENTIFIER_BODY, random.nextInt(random.nextInt(4) == 0 ? 31 : 10), random, out);
+                break;
+
+            case INTEGER:
+                sign(random, out);
+                digits(1 + random.nextInt(6), random, out);
+                break;
+
+            case FLOAT:
+                sign(random, out);
+                digits(1 + random.nextInt(4), random, out);
+                out.append('.');
+                digits(1 + random.nextInt(6), random, out);
+                if (random.nextInt(4) == 0) {
+                    out.append(random.nextBoolean() ? 'e' : 'E');
+                    sign(random, out);
+                    digits(1 + random.nextInt(2), random, out);
+                }
+                break;
+
+            case STRING:
+                out.append('"');
+                stringBody(random, out);
+                out.append('"');
+                break;
+
+            case BOOLEAN:
+                out.append(random.nextBoolean() ? "true" : "false");
+                break;
+
+            case COMMENT:
+                out.append("## ");
+                for (int i = 10 + random.nextInt(50); i > 0; i--) {
+                    out.append((char) (' ' + random.nextInt(95)));
+                }
+                break;
+
+            case MIXED_CASE_IDENTIFIER:
+                out.append((char) ('A' + random.nextInt(26)));
+                appendFrom(IDENTIFIER_BODY, 1 + random.nextInt(5), random, out);
+                out.append((char) ('A' + random.nextInt(26)));
+                appendFrom(IDENTIFIER_BODY, random.nextInt(5), random, out);
+                break;
+
+            case LOWERCASE_IDENTIFIER:
+                out.append((char) ('a' + random.nextInt(26)));
+                appendFrom(IDENTIFIER_BODY, random.nextInt(8), random, out);
+                break;
+
+            case IDENTIFIER_TOO_LONG:
+                out.append((char) ('A' + random.nextInt(26)));
+                appendFrom(IDENTIFIER_BODY, 31 + random.nextInt(20), random, out);
+                break;
+
+            case MALFORMED_INTEGER:
+                digits(1 + random.nextInt(4), random, out);
+                out.append((char) ('a' + random.nextInt(26)));
+                appendFrom("abcdefghijklmnopqrstuvwxyz0123456789", random.nextInt(4), random, out);
+                break;
+
+            case TOO_MANY_DECIMALS:
+                digits(1 + random.nextInt(3), random, out);
+                out.append('.');
+                digits(7 + random.nextInt(5), random, out);
+                break;
+
+            case UNTERMINATED_STRING:
+                out.append('"');
+                stringBody(random, out);
+                break;
+
+            case INVALID_ESCAPE:
+                out.append('"');
+                stringBody(random, out);
+                out.append('\\').append("qxz0".charAt(random.nextInt(4)));
+                out.append('"');
+                break;
+
+            case INVALID_CHARACTER:
+                out.append(INVALID_CHARACTERS.charAt(random.nextInt(INVALID_CHARACTERS.length())));
+                break;
+        }
+    }
+
+    private static void sign(Random random, StringBuilder out) {
+        int r = random.nextInt(4);
+        if (r == 0) out.append('+');
+        else if (r == 1) out.append('-');
+    }
+
+    private static void digits(int count, Random random, StringBuilder out) {
+        for (int i = 0; i < count; i++) {
+            out.append((char) ('0' + random.nextInt(10)));
+        }
+    }
+
+    private static void appendFrom(String chars, int count, Random random, StringBuilder out) {
+        for (int i = 0; i < count; i++) {
+            out.append(chars.charAt(random.nextInt(chars.length())));
+        }
+    }
+
+    private static void stringBody(Random random, StringBuilder out) {
+        for (int i = random.nextInt(30); i > 0; i--) {
+            if (random.nextInt(8) == 0) {
+                out.append('\\').append(ESCAPES.charAt(random.nextInt(ESCAPES.length())));
+            } else {
+                out.append(STRING_CHARS.charAt(random.nextInt(STRING_CHARS.length())));
+            }
+        }
+    }
+
+    /* ---------- Command line ---------- */
+
+    public static void printUsage() {
+
+        System.out.println("==========================================");
+        System.out.println("           CORPUS GENERATOR");
+        System.out.println("==========================================");
+        System.out.println("Usage: java CorpusGenerator [options] <output.y> <size>");
+        System.out.println("Example: java CorpusGenerator --preset INVALID big.y 512M");
+        System.out.println("  <size>             characters, with optional K/M/G suffix");
+        System.out.println("  --seed N           random seed (default 1)");
+        System.out.println("  --preset NAME      IDENTIFIERS, NUMBERS, STRINGS, COMMENTS, MIXED, INVALID");
+        System.out.println("  --weights SPEC     e.g. identifier=40,float=5,malformed_integer=2");
+        System.out.println("==========================================");
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        long seed = 1;
+        String preset = "MIXED";
+        String weights = null;
+        List<String> positional = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--preset":
+                    preset = args[++i];
+                    break;
+                case "--weights":
+                    weights = args[++i];
+                    break;
+                default:
+                    positional.add(args[i]);
+            }
+        }
+
+        if (positional.size() != 2) {
+            printUsage();
+            return;
+        }
+
+        CorpusGenerator generator = preset(preset, seed);
+        if (weights != null) {
+            generator.setWeights(weights);
+        }
+
+        long size = parseSize(positional.get(1));
+
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(Paths.get(positional.get(0))),
+                StandardCharsets.UTF_8), 1 << 16)) {
+            generator.generate(out, size);
+        }
+    }
+
+    private static long parseSize(String size) {
+
+        char unit = Character.toUpperCase(size.charAt(size.length() - 1));
+        long multiplier = unit == 'K' ? 1L << 10 : unit == 'M' ? 1L << 20 : unit == 'G' ? 1L << 30 : 1;
+        String number = multiplier == 1 ? size : size.substring(0, size.length() - 1);
+        return Long.parseLong(number) * multiplier;
+    }
+}
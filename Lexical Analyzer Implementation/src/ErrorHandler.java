@@ -1,9 +1,48 @@
+import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class ErrorHandler {
 
+    /*
+     * How echoed errors reach the output:
+     *   SYNCHRONOUS  printed as they are reported (the default)
+     *   BUFFERED     formatted into memory, written in bulk by the reporting thread
+     *   ASYNC        formatted into memory, written in bulk by a background thread
+     */
+    public enum ReportMode { SYNCHRONOUS, BUFFERED, ASYNC }
+
+    // Formatted text is handed to the output once this much has piled up
+    private static final int FLUSH_THRESHOLD = 1 << 16;
+
+    // ASYNC: chunks waiting for the writer thread; a reporter that finds the queue full waits
+    private static final int MAX_QUEUED_CHUNKS = 4;
+
+    // ASYNC: an idle writer thread exits after this long (a later chunk starts a new one)
+    private static final long WRITER_KEEP_ALIVE_MS = 1000;
+
+    private static final ErrorType[] TYPES = ErrorType.values();
+
     private final List<CompilationError> errors;
+    private final Map<ErrorType, Integer> counts = new HashMap<>();
     private boolean hasErrors;
+    private int errorCount = 0;
+
+    /* Print each error as it is reported */
+    private boolean echo = true;
+
+    private ReportMode mode = ReportMode.SYNCHRONOUS;
+    private PrintStream out = System.err;
+    private final StringBuilder pending = new StringBuilder();
+    private ThreadPoolExecutor writer;                  // ASYNC only
+
+    // Errors beyond retainLimit are counted but not kept; errorLimit asks the scanner to stop
+    private int retainLimit = Integer.MAX_VALUE;
+    private int errorLimit = Integer.MAX_VALUE;
+
+    // Errors not retained, packed as (line << 32 | type ordinal), so replaceLines() can un-count them
+    private long[] dropped = new long[0];
+    private int droppedCount = 0;
 
     public ErrorHandler() {
         errors = new ArrayList<>();
@@ -17,13 +56,275 @@ public class ErrorHandler {
                             String lexeme,
                             String reason) {
 
-        CompilationError error =
-                new CompilationError(type, line, column, lexeme, reason);
+        record(new CompilationError(type, line, column, lexeme, reason));
+    }
+
+    /* Append another handler's errors in order (e.g. from a worker thread), retained or not */
+    public void addAll(ErrorHandler other) {
+
+        for (CompilationError error : other.errors) {
+            record(error);
+        }
+        for (int i = 0; i < other.droppedCount; i++) {
+            long error = other.dropped[i];
+            count(TYPES[(int) error]);
+            drop(droppedCount, error);
+        }
+    }
+
+    /*
+     * Incremental re-lexing: replace the errors on lines [fromLine, toLine]
+     * with the replacement's errors (from the re-lexed lines) and move the
+     * errors after toLine by lineDelta. Errors are immutable, so the moved
+     * ones are replaced by copies. The replacement's errors are retained
+     * while there is room under the retain limit and only counted after
+     * that. Nothing is echoed.
+     *
+     * Errors are in line order, so the replaced range is found by binary
+     * search; moving the later errors costs one pass over them.
+     */
+    public void replaceLines(int fromLine, int toLine, int lineDelta, ErrorHandler replacement) {
+
+        int from = search(fromLine);
+        int to = search(toLine + 1);
+        for (int i = from; i < to; i++) {
+            uncount(errors.get(i).getType());
+        }
+        if (lineDelta != 0) {
+            for (int i = to; i < errors.size(); i++) {
+                CompilationError error = errors.get(i);
+                errors.set(i, new CompilationError(error.getType(), error.getLine() + lineDelta,
+                        error.getColumn(), error.getLexeme(), error.getReason()));
+            }
+        }
+        errors.subList(from, to).clear();
+
+        int droppedFrom = searchDropped(fromLine);
+        int droppedTo = searchDropped(toLine + 1);
+        for (int i = droppedFrom; i < droppedTo; i++) {
+            uncount(TYPES[(int) dropped[i]]);
+        }
+        if (lineDelta != 0) {
+            for (int i = droppedTo; i < droppedCount; i++) {
+                dropped[i] += (long) lineDelta << 32;
+            }
+        }
+        System.arraycopy(dropped, droppedTo, dropped, droppedFrom, droppedCount - droppedTo);
+        droppedCount -= droppedTo - droppedFrom;
+
+        // Both lists stay in line order: the new errors go where the old ones were
+        int retained = Math.max(0, Math.min(replacement.errors.size(), retainLimit - errors.size()));
+        errors.addAll(from, replacement.errors.subList(0, retained));
+        for (CompilationError error : replacement.errors) {
+            count(error.getType());
+        }
+        for (int i = retained; i < replacement.errors.size(); i++) {
+            CompilationError error = replacement.errors.get(i);
+            drop(droppedFrom++, pack(error.getLine(), error.getType()));
+        }
+        for (int i = 0; i < replacement.droppedCount; i++) {
+            count(TYPES[(int) replacement.dropped[i]]);
+            drop(droppedFrom++, replacement.dropped[i]);
+        }
+        hasErrors = errorCount > 0;
+    }
+
+    // Index of the first retained error on or after line
+    private int search(int line) {
+        int low = 0;
+        int high = errors.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (errors.get(middle).getLine() < line) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Index of the first dropped error on or after line
+    private int searchDropped(int line) {
+        long first = (long) line << 32;
+        int low = 0;
+        int high = droppedCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (dropped[middle] < first) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static long pack(int line, ErrorType type) {
+        return ((long) line << 32) | type.ordinal();
+    }
 
-        errors.add(error);
+    // Insert a packed error into the dropped list at index
+    private void drop(int index, long error) {
+        if (droppedCount == dropped.length) {
+            dropped = Arrays.copyOf(dropped, Math.max(16, droppedCount * 2));
+        }
+        System.arraycopy(dropped, index, dropped, index + 1, droppedCount - index);
+        dropped[index] = error;
+        droppedCount++;
+    }
+
+    private void count(ErrorType type) {
+        errorCount++;
+        counts.merge(type, 1, Integer::sum);
+    }
+
+    private void uncount(ErrorType type) {
+        errorCount--;
+        if (counts.merge(type, -1, Integer::sum) == 0) {
+            counts.remove(type);
+        }
+    }
+
+    private void record(CompilationError error) {
+
+        count(error.getType());
         hasErrors = true;
 
-        printError(error);
+        if (errors.size() < retainLimit) {
+            errors.add(error);
+        } else {
+            drop(droppedCount, pack(error.getLine(), error.getType()));
+        }
+
+        if (echo) {
+            if (mode == ReportMode.SYNCHRONOUS) {
+                printError(error);
+            } else {
+                format(error, pending);
+                if (pending.length() >= FLUSH_THRESHOLD) {
+                    writePending();
+                }
+            }
+        }
+    }
+
+    public void setEcho(boolean echo) {
+        this.echo = echo;
+    }
+
+    /* Switch reporting mode; anything still buffered is flushed first */
+    public void setReportMode(ReportMode mode) {
+
+        flush();
+        if (writer != null && mode != ReportMode.ASYNC) {
+            writer.shutdown();
+            writer = null;
+        }
+        this.mode = mode;
+    }
+
+    public ReportMode getReportMode() {
+        return mode;
+    }
+
+    public void setOutput(PrintStream out) {
+        flush();
+        this.out = out;
+    }
+
+    /* Keep at most limit errors in getErrors(); the rest are only counted (by line and type) */
+    public void setRetainLimit(int limit) {
+        this.retainLimit = limit;
+    }
+
+    /* Stop-after-N policy: once limit errors are reported, isLimitReached() turns true */
+    public void setErrorLimit(int limit) {
+        this.errorLimit = limit;
+    }
+
+    public int getErrorLimit() {
+        return errorLimit;
+    }
+
+    /* Scanners check this and stop producing tokens */
+    public boolean isLimitReached() {
+        return errorCount >= errorLimit;
+    }
+
+    /* Write out everything buffered so far and wait until it has been written */
+    public void flush() {
+
+        writePending();
+
+        if (writer != null) {
+            try {
+                writer.submit(() -> { }).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Error writer failed", e.getCause());
+            }
+        }
+    }
+
+    private void writePending() {
+
+        if (pending.length() == 0) {
+            return;
+        }
+
+        String text = pending.toString();
+        pending.setLength(0);
+
+        if (mode == ReportMode.ASYNC) {
+            if (writer == null) {
+                writer = newWriter();
+            }
+            PrintStream target = out;
+            writer.execute(() -> {
+                target.print(text);
+                target.flush();
+            });
+        } else {
+            out.print(text);
+            out.flush();
+        }
+    }
+
+    /*
+     * One writer thread behind a bounded queue. When the output falls behind,
+     * the reporting thread blocks until a chunk is written, so at most
+     * MAX_QUEUED_CHUNKS chunks (plus the one being written) are held. The
+     * thread exits when idle, so handlers that are dropped without being
+     * switched back to another mode (one per file, say) leave no thread.
+     */
+    private static ThreadPoolExecutor newWriter() {
+
+        ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, WRITER_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_CHUNKS),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "error-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (chunk, executor) -> {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Error writer is shut down");
+                    }
+                    try {
+                        executor.getQueue().put(chunk);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while queueing errors", e);
+                    }
+                });
+        writer.allowCoreThreadTimeOut(true);
+        return writer;
+    }
+
+    public List<CompilationError> getErrors() {
+        return Collections.unmodifiableList(errors);
     }
 
     /* Overloaded method  */
@@ -73,15 +374,29 @@ public class ErrorHandler {
     /* Print single error */
     private void printError(CompilationError error) {
 
-        System.err.println("========================================");
-        System.err.println("LEXICAL ERROR: " + error.getType());
-        System.err.println("Location: Line " +
+        out.println("========================================");
+        out.println("LEXICAL ERROR: " + error.getType());
+        out.println("Location: Line " +
                 error.getLine() +
                 ", Column " +
                 error.getColumn());
-        System.err.println("Lexeme: \"" + error.getLexeme() + "\"");
-        System.err.println("Reason: " + error.getReason());
-        System.err.println("========================================\n");
+        out.println("Lexeme: \"" + error.getLexeme() + "\"");
+        out.println("Reason: " + error.getReason());
+        out.println("========================================\n");
+    }
+
+    /* Same text as printError(), appended to a buffer */
+    private static void format(CompilationError error, StringBuilder text) {
+
+        String newline = System.lineSeparator();
+
+        text.append("========================================").append(newline);
+        text.append("LEXICAL ERROR: ").append(error.getType()).append(newline);
+        text.append("Location: Line ").append(error.getLine())
+            .append(", Column ").append(error.getColumn()).append(newline);
+        text.append("Lexeme: \"").append(error.getLexeme()).append('"').append(newline);
+        text.append("Reason: ").append(error.getReason()).append(newline);
+        text.append("========================================").append('\n').append(newline);
     }
 
     /* Has any error occurred? */
@@ -89,34 +404,42 @@ public class ErrorHandler {
         return hasErrors;
     }
 
+    /* Number of errors recorded so far (including any not retained) */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
     /* Print summary */
     public void printSummary() {
 
+        flush();
+
         if (!hasErrors) {
             System.out.println("\n✅ No lexical errors found.");
             return;
         }
 
         System.out.println("\n========== ERROR SUMMARY ==========");
-        System.out.println("Total errors: " + errors.size());
-
-        Map<ErrorType, Integer> counts = new HashMap<>();
-
-        for (CompilationError e : errors) {
-            counts.put(e.getType(),
-                    counts.getOrDefault(e.getType(), 0) + 1);
-        }
+        System.out.println("Total errors: " + errorCount);
 
         for (Map.Entry<ErrorType, Integer> entry : counts.entrySet()) {
             System.out.println(entry.getKey() + ": " + entry.getValue());
         }
 
+        if (isLimitReached()) {
+            System.out.println("Scanning stopped after " + errorLimit + " errors");
+        }
+
         System.out.println("====================================\n");
     }
 
     /* Clear errors */
     public void clear() {
+        pending.setLength(0);
         errors.clear();
+        droppedCount = 0;
+        counts.clear();
+        errorCount = 0;
         hasErrors = false;
     }
 
@@ -0,0 +1,130 @@
+import java.util.Arrays;
+
+/*
+ * Hash-consed identifier names.
+ *
+ * intern() hashes and compares characters straight from the source range,
+ * so a name that has been seen before costs no allocation; only the first
+ * occurrence creates the canonical String. Each distinct name gets a
+ * dense, stable symbol ID (0, 1, 2, ... in first-seen order), which later
+ * phases can compare with a plain int compare.
+ */
+public class IdentifierPool {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] slots = new int[INITIAL_CAPACITY * 2];    // symbol ID + 1, 0 = empty
+    private String[] names = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /* Symbol ID for text[start, end), adding the name on first sight */
+    public int intern(CharSequence text, int start, int end) {
+
+        int hash = hash(text, start, end);
+        int mask = slots.length - 1;
+
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+
+            int entry = slots[slot];
+            if (entry == 0) {
+                int id = add(text.subSequence(start, end).toString(), hash);
+                slots[slot] = id + 1;
+                if (size * 2 > slots.length) {
+                    rehash();
+                }
+                return id;
+            }
+
+            int id = entry - 1;
+            if (hashes[id] == hash && matches(names[id], text, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    public int intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    /* Symbol ID for a name, or -1 if it has never been interned */
+    public int find(CharSequence name) {
+
+        int hash = hash(name, 0, name.length());
+        int mask = slots.length - 1;
+
+        for (int slot = mix(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && matches(names[id], name, 0, name.length())) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /* Canonical String for a symbol ID */
+    public String getName(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Symbol ID " + id + ", size " + size);
+        }
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(String name, int hash) {
+
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        names[size] = name;
+        hashes[size] = hash;
+        return size++;
+    }
+
+    private void rehash() {
+
+        int[] newSlots = new int[slots.length * 2];
+        int mask = newSlots.length - 1;
+
+        for (int id = 0; id < size; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (newSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = id + 1;
+        }
+        slots = newSlots;
+    }
+
+    /* Same value as String.hashCode() of the range */
+    static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash;
+    }
+
+    /* Spread the low bits before masking (linear probing is sensitive to clustering) */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String name, CharSequence text, int start, int end) {
+
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,442 @@
+import java.util.*;
+
+/*
+ * Keeps the token stream of a document up to date as it is edited (e.g.
+ * in an editor or language server), instead of re-running
+ * new ManualScanner(text).scan() on every keystroke.
+ *
+ * No token or error spans a newline and the DFA starts every line in q0
+ * (the same property scanParallel() relies on), so an edit can only change
+ * the tokens of the lines it touches. edit() re-lexes from the start of
+ * the first touched line to the end of the last one; at that newline the
+ * new stream is back in sync with the old one. Tokens after it keep their
+ * text and columns, and only their offsets and line numbers move. The
+ * symbol table and error list are patched the same way.
+ *
+ * Nothing after the edit is copied or rewritten: the text is a gap buffer,
+ * and the line starts and token arrays have a gap at the last edit too.
+ * Entries after a gap hold their offset from the end of the text and their
+ * line counted from the last line, so they stay right however the text
+ * before them grows or shrinks; they are converted only when the gap moves
+ * past them. An edit therefore costs the size of the edited lines plus the
+ * distance from the previous edit, which is small while someone types.
+ *
+ * Deliberately left as it was: when an edit adds or removes lines, the
+ * symbol occurrences and errors after it are renumbered in one pass
+ * (SymbolTable/ErrorHandler.replaceLines; moved errors are copied), and
+ * getText() builds the whole String.
+ */
+public class IncrementalScanner {
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final GapText text;
+
+    // Offset of the first character of each line; a gap at index lineGap
+    private int[] lineStarts = new int[64];
+    private int lineGap = 0;
+    private int lineGapEnd = lineStarts.length;
+
+    // Tokens in source order, as parallel arrays with a gap at index tokenGap
+    private byte[] types = new byte[256];
+    private int[] starts = new int[256];
+    private int[] lengths = new int[256];
+    private int[] lines = new int[256];
+    private int[] columns = new int[256];
+    private int[] symbolIds = new int[256];
+    private int tokenGap = 0;
+    private int tokenGapEnd = types.length;
+
+    private final SymbolTable symbolTable = new SymbolTable();
+    private final ErrorHandler errorHandler = new ErrorHandler();
+
+    public IncrementalScanner(String text) {
+
+        this.text = new GapText(text);
+        errorHandler.setEcho(false);
+
+        indexLines(0, text.length(), true);
+        Region region = lex(0, text.length(), 1);
+        errorHandler.addAll(region.scanner.getErrorHandler());
+        renumber(region, symbolTable.addAll(region.symbols));
+        insertTokens(region, 0);
+    }
+
+    /*
+     * Apply an edit: removed characters at offset are replaced by inserted.
+     * Returns the index of the first token that changed.
+     */
+    public int edit(int offset, int removed, String inserted) {
+
+        if (offset < 0 || removed < 0 || offset + removed > text.length()) {
+            throw new IndexOutOfBoundsException("Edit " + offset + "+" + removed
+                    + " outside text of length " + text.length());
+        }
+
+        // Old lines [firstLine, lastLine] (0-based) are touched by the edit
+        int lineCount = lineCount();
+        int firstLine = lineOf(offset);
+        int lastLine = lineOf(offset + removed);
+        int regionStart = lineStart(firstLine);
+        int oldEnd = (lastLine + 1 < lineCount) ? lineStart(lastLine + 1) : text.length();
+
+        int lineDelta = countNewlines(inserted, 0, inserted.length())
+                - countNewlines(text, offset, offset + removed);
+
+        int from = firstTokenAt(regionStart);
+        int to = firstTokenAt(oldEnd);
+        int[] touched = new int[to - from];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            int id = symbolIds[slot(i)];
+            if (id >= 0) {
+                touched[count++] = id;
+            }
+        }
+
+        // Open the gaps over the edited lines and their tokens (while the old length still applies)
+        moveLineGap(lastLine + 1);
+        moveTokenGap(to);
+        lineGap = firstLine;
+        tokenGap = from;
+
+        // Everything after the gaps now moves with the new length and line count
+        text.replace(offset, removed, inserted);
+        int newEnd = oldEnd + inserted.length() - removed;
+        indexLines(regionStart, newEnd, lineGapEnd == lineStarts.length);
+
+        // Re-lex the edited lines and put their tokens in place of the old ones
+        Region region = lex(regionStart, newEnd, firstLine + 1);
+        errorHandler.replaceLines(firstLine + 1, lastLine + 1, lineDelta,
+                region.scanner.getErrorHandler());
+        renumber(region, symbolTable.replaceLines(firstLine + 1, lastLine + 1, lineDelta,
+                region.symbols, Arrays.copyOf(touched, count)));
+
+        insertTokens(region, regionStart);
+        return from;
+    }
+
+    /* ---------- Lexing a region ---------- */
+
+    private static final class Region {
+        ManualScanner scanner;
+        final SymbolTable symbols = new SymbolTable();
+        TokenBuffer tokens;
+        int[] symbolIds;
+    }
+
+    // Lex text[start, end), where start is the beginning of line number firstLine
+    private Region lex(int start, int end, int firstLine) {
+
+        // Only the region is copied out; its offsets are relative to start
+        Region region = new Region();
+        region.scanner = new ManualScanner(SourceBuffer.of(text.substring(start, end)), 0, firstLine, 1);
+        region.scanner.setSymbolTable(region.symbols);
+        region.scanner.getErrorHandler().setEcho(false);
+        region.tokens = region.scanner.scanToBuffer();
+        return region;
+    }
+
+    // Map the region scanner's symbol IDs to ours
+    private static void renumber(Region region, int[] ids) {
+        region.symbolIds = new int[region.tokens.size()];
+        for (int i = 0; i < region.symbolIds.length; i++) {
+            int id = region.tokens.getSymbolId(i);
+            region.symbolIds[i] = (id >= 0) ? ids[id] : -1;
+        }
+    }
+
+    /* ---------- Token arrays ---------- */
+
+    // Put the region's tokens (offsets relative to start) into the token gap
+    private void insertTokens(Region region, int start) {
+
+        TokenBuffer tokens = region.tokens;
+        int count = tokens.size();
+        if (tokenGapEnd - tokenGap < count) {
+            growTokens(count);
+        }
+
+        for (int i = 0; i < count; i++) {
+            types[tokenGap] = (byte) tokens.getType(i).ordinal();
+            starts[tokenGap] = start + tokens.getStart(i);
+            lengths[tokenGap] = tokens.getLength(i);
+            lines[tokenGap] = tokens.getLine(i);
+            columns[tokenGap] = tokens.getColumn(i);
+            symbolIds[tokenGap] = region.symbolIds[i];
+            tokenGap++;
+        }
+    }
+
+    // Move the gap to just before token index (columns are per line and never change)
+    private void moveTokenGap(int index) {
+
+        int length = text.length();
+        int lineCount = lineCount();
+
+        while (tokenGap > index) {
+            tokenGap--;
+            tokenGapEnd--;
+            moveToken(tokenGap, tokenGapEnd, -length, -lineCount);
+        }
+        while (tokenGap < index) {
+            moveToken(tokenGapEnd, tokenGap, length, lineCount);
+            tokenGap++;
+            tokenGapEnd++;
+        }
+    }
+
+    private void moveToken(int from, int to, int startShift, int lineShift) {
+        types[to] = types[from];
+        starts[to] = starts[from] + startShift;
+        lengths[to] = lengths[from];
+        lines[to] = lines[from] + lineShift;
+        columns[to] = columns[from];
+        symbolIds[to] = symbolIds[from];
+    }
+
+    private void growTokens(int needed) {
+
+        int capacity = Math.max(types.length * 2, size() + needed);
+        int tail = types.length - tokenGapEnd;
+        int newGapEnd = capacity - tail;
+
+        types = regap(types, new byte[capacity], tail, newGapEnd);
+        starts = regap(starts, new int[capacity], tail, newGapEnd);
+        lengths = regap(lengths, new int[capacity], tail, newGapEnd);
+        lines = regap(lines, new int[capacity], tail, newGapEnd);
+        columns = regap(columns, new int[capacity], tail, newGapEnd);
+        symbolIds = regap(symbolIds, new int[capacity], tail, newGapEnd);
+        tokenGapEnd = newGapEnd;
+    }
+
+    private <T> T regap(T array, T grown, int tail, int newGapEnd) {
+        System.arraycopy(array, 0, grown, 0, tokenGap);
+        System.arraycopy(array, tokenGapEnd, grown, newGapEnd, tail);
+        return grown;
+    }
+
+    // Physical index of token index
+    private int slot(int index) {
+        return (index < tokenGap) ? index : index + (tokenGapEnd - tokenGap);
+    }
+
+    // Index of the first token starting at or after offset
+    private int firstTokenAt(int offset) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getStart(mid) < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /* ---------- Line index ---------- */
+
+    /*
+     * Add the starts of the lines in text[start, end); start begins a line.
+     * Every newline starts a line, including a final one at the very end of
+     * the text (last: end is the end of the text).
+     */
+    private void indexLines(int start, int end, boolean last) {
+        addLine(start);
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '\n' && (i + 1 < end || last)) {
+                addLine(i + 1);
+            }
+        }
+    }
+
+    // Add a line start at the gap
+    private void addLine(int start) {
+        if (lineGap == lineGapEnd) {
+            int tail = lineStarts.length - lineGapEnd;
+            int[] grown = new int[lineStarts.length * 2];
+            System.arraycopy(lineStarts, 0, grown, 0, lineGap);
+            System.arraycopy(lineStarts, lineGapEnd, grown, grown.length - tail, tail);
+            lineStarts = grown;
+            lineGapEnd = grown.length - tail;
+        }
+        lineStarts[lineGap++] = start;
+    }
+
+    private void moveLineGap(int index) {
+
+        int length = text.length();
+        while (lineGap > index) {
+            lineStarts[--lineGapEnd] = lineStarts[--lineGap] - length;
+        }
+        while (lineGap < index) {
+            lineStarts[lineGap++] = lineStarts[lineGapEnd++] + length;
+        }
+    }
+
+    private int lineStart(int line) {
+        return (line < lineGap)
+                ? lineStarts[line]
+                : lineStarts[line + (lineGapEnd - lineGap)] + text.length();
+    }
+
+    private int lineCount() {
+        return lineGap + (lineStarts.length - lineGapEnd);
+    }
+
+    // 0-based line containing offset (offset == text length belongs to the last line)
+    private int lineOf(int offset) {
+        int low = 0;
+        int high = lineCount() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lineStart(mid) <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static int countNewlines(CharSequence s, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /* ---------- Text ---------- */
+
+    // The document with a gap at the last edit, so an edit only moves the text between two edits
+    private static final class GapText implements CharSequence {
+
+        private char[] chars;
+        private int gap;
+        private int gapEnd;
+
+        GapText(String text) {
+            chars = new char[Math.max(16, text.length() * 2)];
+            text.getChars(0, text.length(), chars, 0);
+            gap = text.length();
+            gapEnd = chars.length;
+        }
+
+        void replace(int offset, int removed, String inserted) {
+
+            moveGap(offset);
+            gapEnd += removed;
+
+            if (gapEnd - gap < inserted.length()) {
+                int tail = chars.length - gapEnd;
+                char[] grown = new char[Math.max(chars.length * 2, length() + inserted.length())];
+                System.arraycopy(chars, 0, grown, 0, gap);
+                System.arraycopy(chars, gapEnd, grown, grown.length - tail, tail);
+                chars = grown;
+                gapEnd = grown.length - tail;
+            }
+            inserted.getChars(0, inserted.length(), chars, gap);
+            gap += inserted.length();
+        }
+
+        private void moveGap(int offset) {
+            if (offset < gap) {
+                int count = gap - offset;
+                System.arraycopy(chars, offset, chars, gapEnd - count, count);
+                gap -= count;
+                gapEnd -= count;
+            } else if (offset > gap) {
+                int count = offset - gap;
+                System.arraycopy(chars, gapEnd, chars, gap, count);
+                gap += count;
+                gapEnd += count;
+            }
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[(index < gap) ? index : index + (gapEnd - gap)];
+        }
+
+        @Override
+        public int length() {
+            return chars.length - (gapEnd - gap);
+        }
+
+        String substring(int start, int end) {
+            if (end <= gap) {
+                return new String(chars, start, end - start);
+            }
+            int shift = gapEnd - gap;
+            if (start >= gap) {
+                return new String(chars, start + shift, end - start);
+            }
+            return new StringBuilder(end - start)
+                    .append(chars, start, gap - start)
+                    .append(chars, gapEnd, end - gap)
+                    .toString();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return substring(0, length());
+        }
+    }
+
+    /* ---------- Results ---------- */
+
+    /* The whole document (built on each call) */
+    public String getText() {
+        return text.toString();
+    }
+
+    public int size() {
+        return tokenGap + (types.length - tokenGapEnd);
+    }
+
+    public Token getToken(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Token index " + index + ", size " + size());
+        }
+        int slot = slot(index);
+        int start = getStart(index);
+        return new Token(TYPES[types[slot]], text.substring(start, start + lengths[slot]),
+                getLine(index), columns[slot], symbolIds[slot]);
+    }
+
+    public int getStart(int index) {
+        int slot = slot(index);
+        return (index < tokenGap) ? starts[slot] : starts[slot] + text.length();
+    }
+
+    private int getLine(int index) {
+        int slot = slot(index);
+        return (index < tokenGap) ? lines[slot] : lines[slot] + lineCount();
+    }
+
+    public List<Token> getTokens() {
+        List<Token> tokens = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            tokens.add(getToken(i));
+        }
+        return tokens;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    public ErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+}
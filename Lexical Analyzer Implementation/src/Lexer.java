@@ -0,0 +1,21 @@
+import java.io.IOException;
+
+/*
+ * A lexer driven the way AutoScannerMain drives Yylex: yylex() returns
+ * tokens (including WHITESPACE and ERROR ones, if the rules produce them)
+ * and then EOF tokens. Implemented by the generated Yylex and by
+ * SpecLexer, which runs tables built from the same Scanner.flex at run
+ * time.
+ */
+public interface Lexer {
+
+    Token yylex() throws IOException;
+
+    int getCommentCount();
+
+    int getLineCount();
+
+    void setSymbolTable(SymbolStore table);
+
+    void setErrorHandler(ErrorHandler handler);
+}
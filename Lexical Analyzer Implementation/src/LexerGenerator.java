@@ -0,0 +1,525 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+ * Builds LexerTables from a LexerSpec, in the same steps JFlex takes
+ * offline:
+ *
+ *   1. Thompson NFA: every rule's regular expression, joined under one
+ *      start state; a rule's final state accepts with the rule's index.
+ *   2. Character classes: the points where any character set starts or
+ *      stops split the code points into intervals that every set treats
+ *      alike; the automaton runs on interval numbers, not characters.
+ *   3. Subset construction. A DFA state accepts with the lowest rule index
+ *      among its NFA states, so the earlier rule wins a tie between equally
+ *      long matches, as in JFlex.
+ *   4. Hopcroft minimization, starting from one block per accepted rule
+ *      (plus one for non-accepting states, including the dead state).
+ *   5. Classes whose columns came out identical are merged, and the tables
+ *      are laid out densely: next[state * classes + class], -1 for none.
+ */
+public class LexerGenerator {
+
+    private final LexerSpec spec;
+
+    // NFA: at most one character edge per state, plus epsilon edges
+    private int nfaSize = 0;
+    private int[][] charEdges = new int[256][];    // ranges, null if none
+    private int[] charTargets = new int[256];
+    private int[][] epsilons = new int[256][];
+    private int[] epsilonCounts = new int[256];
+    private int[] nfaAccept = new int[256];        // rule index or -1
+
+    // Interval i is [boundaries[i], boundaries[i + 1])
+    private int[] boundaries;
+
+    private int dfaStates;
+    private int minimizedStates;
+
+    public LexerGenerator(LexerSpec spec) {
+        this.spec = spec;
+    }
+
+    public static LexerTables generate(String specText, long specHash) {
+        return new LexerGenerator(LexerSpec.parse(specText)).generate(specHash);
+    }
+
+    public LexerTables generate(long specHash) {
+
+        List<LexerSpec.Rule> rules = spec.getRules();
+
+        // 1. NFA
+        int start = newState();
+        for (int rule = 0; rule < rules.size(); rule++) {
+            int[] fragment = build(rules.get(rule).regex);
+            addEpsilon(start, fragment[0]);
+            nfaAccept[fragment[1]] = rule;
+        }
+
+        // 2. Character classes
+        boundaries = intervals();
+        int intervals = boundaries.length - 1;
+        BitSet[] edgeIntervals = new BitSet[nfaSize];
+        for (int state = 0; state < nfaSize; state++) {
+            if (charEdges[state] != null) {
+                edgeIntervals[state] = coveredIntervals(charEdges[state]);
+            }
+        }
+
+        // 3. Subset construction
+        List<BitSet> sets = new ArrayList<>();
+        Map<BitSet, Integer> index = new HashMap<>();
+        List<int[]> transitions = new ArrayList<>();
+
+        BitSet initial = closure(single(start));
+        sets.add(initial);
+        index.put(initial, 0);
+
+        for (int current = 0; current < sets.size(); current++) {
+
+            BitSet set = sets.get(current);
+            int[] row = new int[intervals];
+
+            for (int interval = 0; interval < intervals; interval++) {
+
+                BitSet moved = new BitSet(nfaSize);
+                for (int state = set.nextSetBit(0); state >= 0; state = set.nextSetBit(state + 1)) {
+                    if (edgeIntervals[state] != null && edgeIntervals[state].get(interval)) {
+                        moved.set(charTargets[state]);
+                    }
+                }
+
+                if (moved.isEmpty()) {
+                    row[interval] = -1;
+                    continue;
+                }
+
+                BitSet target = closure(moved);
+                Integer id = index.get(target);
+                if (id == null) {
+                    id = sets.size();
+                    sets.add(target);
+                    index.put(target, id);
+                }
+                row[interval] = id;
+            }
+            transitions.add(row);
+        }
+
+        dfaStates = sets.size();
+        int[] accept = new int[dfaStates];
+        for (int state = 0; state < dfaStates; state++) {
+            accept[state] = -1;
+            BitSet set = sets.get(state);
+            for (int nfa = set.nextSetBit(0); nfa >= 0; nfa = set.nextSetBit(nfa + 1)) {
+                if (nfaAccept[nfa] >= 0 && (accept[state] < 0 || nfaAccept[nfa] < accept[state])) {
+                    accept[state] = nfaAccept[nfa];
+                }
+            }
+        }
+
+        // 4. Minimization
+        int[] blockOf = minimize(transitions, accept, intervals);
+
+        // Renumber blocks so the start state is 0 and the dead state disappears
+        int dead = blockOf[dfaStates];
+        int[] number = new int[dfaStates + 1];
+        Arrays.fill(number, -1);
+        int[] representative = new int[dfaStates];
+        int count = 0;
+        for (int state = 0; state < dfaStates; state++) {
+            int block = blockOf[state];
+            if (block != dead && number[block] < 0) {
+                number[block] = count;
+                representative[count++] = state;
+            }
+        }
+        minimizedStates = count;
+
+        int[][] rows = new int[count][intervals];
+        int[] finalAccept = new int[count];
+        for (int state = 0; state < count; state++) {
+            int old = representative[state];
+            finalAccept[state] = accept[old];
+            for (int interval = 0; interval < intervals; interval++) {
+                int target = transitions.get(old)[interval];
+                rows[state][interval] = (target < 0 || blockOf[target] == dead) ? -1 : number[blockOf[target]];
+            }
+        }
+
+        // 5. Merge identical columns into classes
+        int[] classOf = new int[intervals];
+        List<Integer> columns = new ArrayList<>();
+        for (int interval = 0; interval < intervals; interval++) {
+            classOf[interval] = -1;
+            for (int c = 0; c < columns.size() && classOf[interval] < 0; c++) {
+                if (sameColumn(rows, columns.get(c), interval)) {
+                    classOf[interval] = c;
+                }
+            }
+            if (classOf[interval] < 0) {
+                classOf[interval] = columns.size();
+                columns.add(interval);
+            }
+        }
+
+        int classes = columns.size();
+        int[] next = new int[count * classes];
+        for (int state = 0; state < count; state++) {
+            for (int c = 0; c < classes; c++) {
+                next[state * classes + c] = rows[state][columns.get(c)];
+            }
+        }
+
+        LexerSpec.Action[] actions = new LexerSpec.Action[rules.size()];
+        for (int rule = 0; rule < actions.length; rule++) {
+            actions[rule] = rules.get(rule).action;
+        }
+
+        return new LexerTables(specHash, Arrays.copyOf(boundaries, intervals), classOf,
+                classes, next, finalAccept, actions);
+    }
+
+    public int getNfaStates() {
+        return nfaSize;
+    }
+
+    public int getDfaStates() {
+        return dfaStates;
+    }
+
+    public int getMinimizedStates() {
+        return minimizedStates;
+    }
+
+    /* ---------- Thompson construction ---------- */
+
+    // Returns {start, end} of a fragment for node
+    private int[] build(LexerSpec.Node node) {
+
+        if (node instanceof LexerSpec.Chars) {
+            int start = newState();
+            int end = newState();
+            charEdges[start] = ((LexerSpec.Chars) node).ranges;
+            charTargets[start] = end;
+            return new int[] { start, end };
+        }
+
+        if (node instanceof LexerSpec.Concat) {
+            int start = newState();
+            int end = start;
+            for (LexerSpec.Node part : ((LexerSpec.Concat) node).parts) {
+                int[] fragment = build(part);
+                addEpsilon(end, fragment[0]);
+                end = fragment[1];
+            }
+            return new int[] { start, end };
+        }
+
+        if (node instanceof LexerSpec.Alt) {
+            int start = newState();
+            int end = newState();
+            for (LexerSpec.Node option : ((LexerSpec.Alt) node).options) {
+                int[] fragment = build(option);
+                addEpsilon(start, fragment[0]);
+                addEpsilon(fragment[1], end);
+            }
+            return new int[] { start, end };
+        }
+
+        LexerSpec.Repeat repeat = (LexerSpec.Repeat) node;
+        int start = newState();
+        int end = start;
+
+        // The required copies, one after another
+        for (int i = 0; i < repeat.min; i++) {
+            int[] fragment = build(repeat.body);
+            addEpsilon(end, fragment[0]);
+            end = fragment[1];
+        }
+
+        if (repeat.max < 0) {
+            // Then a loop
+            int[] fragment = build(repeat.body);
+            int exit = newState();
+            addEpsilon(end, fragment[0]);
+            addEpsilon(end, exit);
+            addEpsilon(fragment[1], fragment[0]);
+            addEpsilon(fragment[1], exit);
+            return new int[] { start, exit };
+        }
+
+        // Then up to (max - min) optional copies; any of them can be the last
+        int exit = newState();
+        addEpsilon(end, exit);
+        for (int i = repeat.min; i < repeat.max; i++) {
+            int[] fragment = build(repeat.body);
+            addEpsilon(end, fragment[0]);
+            end = fragment[1];
+            addEpsilon(end, exit);
+        }
+        return new int[] { start, exit };
+    }
+
+    private int newState() {
+
+        if (nfaSize == charTargets.length) {
+            int capacity = nfaSize * 2;
+            charEdges = Arrays.copyOf(charEdges, capacity);
+            charTargets = Arrays.copyOf(charTargets, capacity);
+            epsilons = Arrays.copyOf(epsilons, capacity);
+            epsilonCounts = Arrays.copyOf(epsilonCounts, capacity);
+            nfaAccept = Arrays.copyOf(nfaAccept, capacity);
+        }
+        nfaAccept[nfaSize] = -1;
+        return nfaSize++;
+    }
+
+    private void addEpsilon(int from, int to) {
+        int[] edges = epsilons[from];
+        if (edges == null) {
+            edges = epsilons[from] = new int[2];
+        } else if (epsilonCounts[from] == edges.length) {
+            edges = epsilons[from] = Arrays.copyOf(edges, edges.length * 2);
+        }
+        edges[epsilonCounts[from]++] = to;
+    }
+
+    private BitSet single(int state) {
+        BitSet set = new BitSet(nfaSize);
+        set.set(state);
+        return set;
+    }
+
+    private BitSet closure(BitSet states) {
+
+        BitSet result = (BitSet) states.clone();
+        int[] stack = new int[nfaSize];
+        int top = 0;
+        for (int state = states.nextSetBit(0); state >= 0; state = states.nextSetBit(state + 1)) {
+            stack[top++] = state;
+        }
+
+        while (top > 0) {
+            int state = stack[--top];
+            for (int i = 0; i < epsilonCounts[state]; i++) {
+                int target = epsilons[state][i];
+                if (!result.get(target)) {
+                    result.set(target);
+                    stack[top++] = target;
+                }
+            }
+        }
+        return result;
+    }
+
+    /* ---------- Character classes ---------- */
+
+    // Sorted points where some character set starts or stops, from 0 to MAX_CHAR + 1
+    private int[] intervals() {
+
+        TreeSet<Integer> points = new TreeSet<>();
+        points.add(0);
+        points.add(LexerSpec.MAX_CHAR + 1);
+
+        for (int state = 0; state < nfaSize; state++) {
+            int[] ranges = charEdges[state];
+            if (ranges != null) {
+                for (int i = 0; i < ranges.length; i += 2) {
+                    points.add(ranges[i]);
+                    points.add(ranges[i + 1] + 1);
+                }
+            }
+        }
+
+        int[] result = new int[points.size()];
+        int i = 0;
+        for (int point : points) {
+            result[i++] = point;
+        }
+        return result;
+    }
+
+    private BitSet coveredIntervals(int[] ranges) {
+        BitSet covered = new BitSet();
+        for (int i = 0; i < ranges.length; i += 2) {
+            int first = Arrays.binarySearch(boundaries, ranges[i]);
+            int last = Arrays.binarySearch(boundaries, ranges[i + 1] + 1);
+            covered.set(first, last);
+        }
+        return covered;
+    }
+
+    private static boolean sameColumn(int[][] rows, int a, int b) {
+        for (int[] row : rows) {
+            if (row[a] != row[b]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* ---------- Hopcroft minimization ---------- */
+
+    /*
+     * Returns the block of every state; state n (n = number of DFA states)
+     * is the dead state that missing transitions lead to.
+     */
+    private static int[] minimize(List<int[]> transitions, int[] accept, int symbols) {
+
+        int n = transitions.size() + 1;
+        int dead = n - 1;
+
+        // Predecessors per (symbol, target state)
+        List<List<List<Integer>>> inverse = new ArrayList<>();
+        for (int symbol = 0; symbol < symbols; symbol++) {
+            List<List<Integer>> bySymbol = new ArrayList<>();
+            for (int state = 0; state < n; state++) {
+                bySymbol.add(new ArrayList<>());
+            }
+            inverse.add(bySymbol);
+        }
+        for (int state = 0; state < n; state++) {
+            for (int symbol = 0; symbol < symbols; symbol++) {
+                int target = (state == dead) ? -1 : transitions.get(state)[symbol];
+                inverse.get(symbol).get(target < 0 ? dead : target).add(state);
+            }
+        }
+
+        // Initial partition: one block per accepted rule, one for the rest
+        int[] blockOf = new int[n];
+        List<List<Integer>> blocks = new ArrayList<>();
+        Map<Integer, Integer> byRule = new HashMap<>();
+        for (int state = 0; state < n; state++) {
+            int rule = (state == dead) ? -1 : accept[state];
+            Integer block = byRule.get(rule);
+            if (block == null) {
+                block = blocks.size();
+                byRule.put(rule, block);
+                blocks.add(new ArrayList<>());
+            }
+            blockOf[state] = block;
+            blocks.get(block).add(state);
+        }
+
+        Deque<Integer> work = new ArrayDeque<>();
+        boolean[] queued = new boolean[n + 1];
+        for (int block = 0; block < blocks.size(); block++) {
+            work.add(block);
+            queued[block] = true;
+        }
+
+        int[] marks = new int[n + 1];
+        while (!work.isEmpty()) {
+
+            int splitter = work.poll();
+            queued[splitter] = false;
+            List<Integer> members = new ArrayList<>(blocks.get(splitter));
+
+            for (int symbol = 0; symbol < symbols; symbol++) {
+
+                // States that move into the splitter on this symbol
+                List<Integer> movers = new ArrayList<>();
+                for (int target : members) {
+                    movers.addAll(inverse.get(symbol).get(target));
+                }
+                if (movers.isEmpty()) {
+                    continue;
+                }
+
+                List<Integer> touched = new ArrayList<>();
+                for (int state : movers) {
+                    if (marks[blockOf[state]]++ == 0) {
+                        touched.add(blockOf[state]);
+                    }
+                }
+
+                for (int block : touched) {
+
+                    int marked = marks[block];
+                    marks[block] = 0;
+                    List<Integer> all = blocks.get(block);
+                    if (marked == all.size()) {
+                        continue;
+                    }
+
+                    // Split: the movers get a new block, the rest keep the old one
+                    Set<Integer> moving = new HashSet<>();
+                    for (int state : movers) {
+                        if (blockOf[state] == block) {
+                            moving.add(state);
+                        }
+                    }
+                    List<Integer> stay = new ArrayList<>();
+                    List<Integer> go = new ArrayList<>();
+                    for (int state : all) {
+                        (moving.contains(state) ? go : stay).add(state);
+                    }
+
+                    int newBlock = blocks.size();
+                    blocks.set(block, stay);
+                    blocks.add(go);
+                    if (queued.length <= newBlock) {
+                        queued = Arrays.copyOf(queued, newBlock * 2);
+                        marks = Arrays.copyOf(marks, newBlock * 2);
+                    }
+                    for (int state : go) {
+                        blockOf[state] = newBlock;
+                    }
+
+                    if (queued[block] || go.size() <= stay.size()) {
+                        work.add(newBlock);
+                        queued[newBlock] = true;
+                    } else {
+                        work.add(block);
+                        queued[block] = true;
+                    }
+                }
+            }
+        }
+        return blockOf;
+    }
+
+    /* ---------- Command line ---------- */
+
+    public static void printUsage() {
+
+        System.out.println("==========================================");
+        System.out.println("           LEXER GENERATOR");
+        System.out.println("==========================================");
+        System.out.println("Usage: java LexerGenerator <spec.flex> [tables.dfa]");
+        System.out.println("Example: java LexerGenerator Scanner.flex");
+        System.out.println("Builds the minimized DFA and writes its tables (default <spec>.dfa)");
+        System.out.println("==========================================");
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 1 || args.length > 2) {
+            printUsage();
+            return;
+        }
+
+        Path specFile = Paths.get(args[0]);
+        Path cache = (args.length == 2) ? Paths.get(args[1]) : LexerTables.defaultCache(specFile);
+
+        String text = new String(Files.readAllBytes(specFile), StandardCharsets.UTF_8);
+        LexerGenerator generator = new LexerGenerator(LexerSpec.parse(text));
+
+        long start = System.nanoTime();
+        LexerTables tables = generator.generate(LexerTables.hash(text));
+        long elapsed = System.nanoTime() - start;
+
+        tables.save(cache);
+
+        System.out.printf("%-30s: %d\n", "Rules", tables.getRuleCount());
+        System.out.printf("%-30s: %d\n", "NFA states", generator.getNfaStates());
+        System.out.printf("%-30s: %d\n", "DFA states", generator.getDfaStates());
+        System.out.printf("%-30s: %d\n", "Minimized states", generator.getMinimizedStates());
+        System.out.printf("%-30s: %d\n", "Character classes", tables.getClassCount());
+        System.out.printf("%-30s: %.1f\n", "Generation ms", elapsed / 1e6);
+        System.out.println("Tables written to " + cache);
+    }
+}
@@ -0,0 +1,641 @@
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * The macros and rules of a JFlex specification such as Scanner.flex, read
+ * so that LexerGenerator can build the automaton at run time instead of
+ * JFlex building Yylex offline.
+ *
+ * Supported regular expressions: characters and escapes (\n, \t, \r, \b,
+ * \f, \\uXXXX, \xHH), "quoted strings", character classes with ranges and
+ * negation, '.', grouping, '|', '*', '+', '?', {n}, {n,}, {n,m} and
+ * {MACRO}. Lexical states, trailing context and anchors are not.
+ *
+ * Actions are Java code and are not run. Each one is recognised by what it
+ * does in Scanner.flex: createToken(TokenType.X) returns a token,
+ * createErrorToken(ErrorType.Y, "reason") reports an error, an action
+ * without a return skips the match, and one that only bumps a counter
+ * (commentCount++) skips it and counts it. <<EOF>> is left to the driver.
+ */
+public class LexerSpec {
+
+    // Highest code point; character sets are ranges within [0, MAX_CHAR]
+    static final int MAX_CHAR = 0x10FFFF;
+
+    // What JFlex's '.' excludes: the line terminators
+    private static final int[] LINE_TERMINATORS = ranges(
+            '\n', '\r', 0x0B, 0x0C, 0x85, 0x2028, 0x2029);
+
+    private final Map<String, String> macros = new LinkedHashMap<>();
+    private final List<Rule> rules = new ArrayList<>();
+
+    // Macro bodies parsed so far (a macro used many times is parsed once)
+    private final Map<String, Node> parsedMacros = new HashMap<>();
+    private final Set<String> expanding = new HashSet<>();
+
+    /* ---------- Regular expression trees ---------- */
+
+    abstract static class Node {
+    }
+
+    /* One character out of a set, given as inclusive [low, high] pairs */
+    static final class Chars extends Node {
+        final int[] ranges;
+
+        Chars(int[] ranges) {
+            this.ranges = ranges;
+        }
+    }
+
+    static final class Concat extends Node {
+        final List<Node> parts;
+
+        Concat(List<Node> parts) {
+            this.parts = parts;
+        }
+    }
+
+    static final class Alt extends Node {
+        final List<Node> options;
+
+        Alt(List<Node> options) {
+            this.options = options;
+        }
+    }
+
+    /* body repeated min to max times (max -1: no upper bound) */
+    static final class Repeat extends Node {
+        final Node body;
+        final int min;
+        final int max;
+
+        Repeat(Node body, int min, int max) {
+            this.body = body;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    /* ---------- Rules and actions ---------- */
+
+    public enum Kind { TOKEN, ERROR, SKIP, COUNT }
+
+    public static final class Action {
+
+        final Kind kind;
+        final TokenType type;                   // TOKEN and ERROR
+        final ErrorHandler.ErrorType error;     // ERROR only
+        final String reason;                    // ERROR only
+
+        Action(Kind kind, TokenType type, ErrorHandler.ErrorType error, String reason) {
+            this.kind = kind;
+            this.type = type;
+            this.error = error;
+            this.reason = reason;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public TokenType getType() {
+            return type;
+        }
+
+        public ErrorHandler.ErrorType getError() {
+            return error;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+
+    static final class Rule {
+        final String pattern;
+        final Node regex;
+        final Action action;
+
+        Rule(String pattern, Node regex, Action action) {
+            this.pattern = pattern;
+            this.regex = regex;
+            this.action = action;
+        }
+    }
+
+    List<Rule> getRules() {
+        return rules;
+    }
+
+    public Map<String, String> getMacros() {
+        return Collections.unmodifiableMap(macros);
+    }
+
+    /* ---------- Reading a specification ---------- */
+
+    private static final Pattern MACRO = Pattern.compile("([A-Za-z_][A-Za-z0-9_]*)\\s*=\\s*(.*)");
+
+    public static LexerSpec parse(String spec) {
+
+        LexerSpec result = new LexerSpec();
+
+        // user code %% options and macros %% rules
+        int first = separator(spec, 0);
+        int second = (first < 0) ? -1 : separator(spec, first + 2);
+        if (second < 0) {
+            throw new IllegalArgumentException("Specification needs two %% separators");
+        }
+
+        result.readMacros(spec.substring(first + 2, second));
+        result.readRules(spec.substring(second + 2));
+
+        if (result.rules.isEmpty()) {
+            throw new IllegalArgumentException("Specification has no rules");
+        }
+        return result;
+    }
+
+    // Offset of the next line consisting of "%%", or -1
+    private static int separator(String spec, int from) {
+        int index = from;
+        while ((index = spec.indexOf("%%", index)) >= 0) {
+            int lineStart = spec.lastIndexOf('\n', index - 1) + 1;
+            int lineEnd = spec.indexOf('\n', index);
+            String line = spec.substring(lineStart, lineEnd < 0 ? spec.length() : lineEnd);
+            if (line.trim().equals("%%")) {
+                return index;
+            }
+            index += 2;
+        }
+        return -1;
+    }
+
+    private void readMacros(String section) {
+
+        boolean inCode = false;
+        boolean inComment = false;
+
+        for (String line : section.split("\n")) {
+
+            String text = line.trim();
+
+            if (inCode) {
+                inCode = !text.startsWith("%}");
+                continue;
+            }
+            if (inComment) {
+                inComment = !text.contains("*/");
+                continue;
+            }
+            if (text.startsWith("%{")) {
+                inCode = !text.endsWith("%}") || text.length() < 4;
+                continue;
+            }
+            if (text.startsWith("/*")) {
+                inComment = !text.contains("*/");
+                continue;
+            }
+            if (text.isEmpty() || text.startsWith("%") || text.startsWith("//")) {
+                continue;
+            }
+
+            Matcher macro = MACRO.matcher(text);
+            if (!macro.matches()) {
+                throw new IllegalArgumentException("Cannot read macro definition: " + text);
+            }
+            macros.put(macro.group(1), macro.group(2).trim());
+        }
+    }
+
+    private void readRules(String section) {
+
+        int pos = 0;
+        while (true) {
+
+            pos = skipSpaceAndComments(section, pos);
+            if (pos >= section.length()) {
+                return;
+            }
+
+            // The pattern ends at the first whitespace outside quotes and classes
+            int end = patternEnd(section, pos);
+            String pattern = section.substring(pos, end);
+
+            pos = skipSpaceAndComments(section, end);
+            if (pos >= section.length() || section.charAt(pos) != '{') {
+                throw new IllegalArgumentException("Expected an action after " + pattern);
+            }
+            int actionEnd = blockEnd(section, pos);
+            String action = section.substring(pos + 1, actionEnd - 1);
+            pos = actionEnd;
+
+            if (pattern.equals("<<EOF>>")) {
+                continue;
+            }
+            rules.add(new Rule(pattern, parseRegex(pattern), readAction(action)));
+        }
+    }
+
+    private static int skipSpaceAndComments(String text, int pos) {
+        while (pos < text.length()) {
+            if (Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            } else if (text.startsWith("/*", pos)) {
+                int end = text.indexOf("*/", pos + 2);
+                pos = (end < 0) ? text.length() : end + 2;
+            } else if (text.startsWith("//", pos)) {
+                int end = text.indexOf('\n', pos);
+                pos = (end < 0) ? text.length() : end + 1;
+            } else {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    private static int patternEnd(String text, int pos) {
+
+        boolean quoted = false;
+        int brackets = 0;
+
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '\\') {
+                pos += 2;
+                continue;
+            }
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted && c == '[') {
+                brackets++;
+            } else if (!quoted && c == ']' && brackets > 0) {
+                brackets--;
+            } else if (!quoted && brackets == 0 && Character.isWhitespace(c)) {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    // Position just past the '}' matching the '{' at pos (Java strings and comments skipped)
+    private static int blockEnd(String text, int pos) {
+
+        int depth = 0;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '"' || c == '\'') {
+                pos++;
+                while (pos < text.length() && text.charAt(pos) != c) {
+                    pos += (text.charAt(pos) == '\\') ? 2 : 1;
+                }
+            } else if (text.startsWith("/*", pos)) {
+                pos = text.indexOf("*/", pos + 2) + 1;
+                if (pos == 0) {
+                    break;
+                }
+            } else if (text.startsWith("//", pos)) {
+                pos = text.indexOf('\n', pos);
+                if (pos < 0) {
+                    break;
+                }
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}' && --depth == 0) {
+                return pos + 1;
+            }
+            pos++;
+        }
+        throw new IllegalArgumentException("Unterminated action block");
+    }
+
+    private static final Pattern CREATE_ERROR = Pattern.compile(
+            "ErrorHandler\\s*\\.\\s*ErrorType\\s*\\.\\s*(\\w+)\\s*,\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+    private static final Pattern TOKEN_TYPE = Pattern.compile("TokenType\\s*\\.\\s*(\\w+)");
+    private static final Pattern COUNTER = Pattern.compile("\\w+\\s*\\+\\+");
+
+    private static Action readAction(String code) {
+
+        if (!code.contains("return")) {
+            return new Action(COUNTER.matcher(code).find() ? Kind.COUNT : Kind.SKIP, null, null, null);
+        }
+
+        Matcher error = CREATE_ERROR.matcher(code);
+        if (error.find()) {
+            return new Action(Kind.ERROR, TokenType.ERROR,
+                    ErrorHandler.ErrorType.valueOf(error.group(1)), unescape(error.group(2)));
+        }
+
+        Matcher type = TOKEN_TYPE.matcher(code);
+        if (type.find()) {
+            return new Action(Kind.TOKEN, TokenType.valueOf(type.group(1)), null, null);
+        }
+        throw new IllegalArgumentException("Cannot tell what this action returns: " + code.trim());
+    }
+
+    private static String unescape(String literal) {
+        StringBuilder text = new StringBuilder(literal.length());
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            text.append(c == '\\' && i + 1 < literal.length() ? literal.charAt(++i) : c);
+        }
+        return text.toString();
+    }
+
+    /* ---------- Regular expression parser ---------- */
+
+    Node parseRegex(String pattern) {
+        return new RegexParser(pattern).parse();
+    }
+
+    private Node macro(String name) {
+
+        Node node = parsedMacros.get(name);
+        if (node != null) {
+            return node;
+        }
+
+        String body = macros.get(name);
+        if (body == null) {
+            throw new IllegalArgumentException("Undefined macro {" + name + "}");
+        }
+        if (!expanding.add(name)) {
+            throw new IllegalArgumentException("Macro {" + name + "} refers to itself");
+        }
+        node = parseRegex(body);
+        expanding.remove(name);
+
+        parsedMacros.put(name, node);
+        return node;
+    }
+
+    private final class RegexParser {
+
+        private final String text;
+        private int pos = 0;
+
+        RegexParser(String text) {
+            this.text = text;
+        }
+
+        Node parse() {
+            Node node = alternation();
+            if (pos < text.length()) {
+                throw error("Unexpected '" + text.charAt(pos) + "'");
+            }
+            return node;
+        }
+
+        private Node alternation() {
+            List<Node> options = new ArrayList<>();
+            options.add(concatenation());
+            while (peek('|')) {
+                pos++;
+                options.add(concatenation());
+            }
+            return (options.size() == 1) ? options.get(0) : new Alt(options);
+        }
+
+        private Node concatenation() {
+            List<Node> parts = new ArrayList<>();
+            while (pos < text.length() && !peek('|') && !peek(')')) {
+                parts.add(repetition());
+            }
+            return (parts.size() == 1) ? parts.get(0) : new Concat(parts);
+        }
+
+        private Node repetition() {
+
+            Node node = atom();
+
+            while (pos < text.length()) {
+                char c = text.charAt(pos);
+                if (c == '*') {
+                    node = new Repeat(node, 0, -1);
+                } else if (c == '+') {
+                    node = new Repeat(node, 1, -1);
+                } else if (c == '?') {
+                    node = new Repeat(node, 0, 1);
+                } else if (c == '{' && pos + 1 < text.length() && isDigit(text.charAt(pos + 1))) {
+                    int close = closingBrace();
+                    String[] bounds = text.substring(pos + 1, close).split(",", -1);
+                    int min = Integer.parseInt(bounds[0].trim());
+                    int max = (bounds.length == 1) ? min
+                            : bounds[1].trim().isEmpty() ? -1 : Integer.parseInt(bounds[1].trim());
+                    if (max >= 0 && max < min) {
+                        throw error("Bad repetition {" + min + "," + max + "}");
+                    }
+                    node = new Repeat(node, min, max);
+                    pos = close;
+                } else {
+                    break;
+                }
+                pos++;
+            }
+            return node;
+        }
+
+        private Node atom() {
+
+            char c = text.charAt(pos);
+            switch (c) {
+
+                case '(': {
+                    pos++;
+                    Node node = peek(')') ? new Concat(Collections.emptyList()) : alternation();
+                    expect(')');
+                    return node;
+                }
+
+                case '[':
+                    return new Chars(charClass());
+
+                case '"': {
+                    pos++;
+                    List<Node> chars = new ArrayList<>();
+                    while (pos < text.length() && text.charAt(pos) != '"') {
+                        int ch = nextChar();
+                        chars.add(new Chars(new int[] { ch, ch }));
+                    }
+                    expect('"');
+                    return (chars.size() == 1) ? chars.get(0) : new Concat(chars);
+                }
+
+                case '.':
+                    pos++;
+                    return new Chars(complement(LINE_TERMINATORS));
+
+                case '{': {
+                    int close = closingBrace();
+                    String name = text.substring(pos + 1, close).trim();
+                    pos = close + 1;
+                    return macro(name);
+                }
+
+                case '\\': {
+                    int ch = escape();
+                    return new Chars(new int[] { ch, ch });
+                }
+
+                case '*': case '+': case '?': case '|': case ')':
+                    throw error("Nothing to apply '" + c + "' to");
+
+                case '^': case '$': case '/': case '~': case '!':
+                    throw error("'" + c + "' is not supported");
+
+                default: {
+                    int ch = text.codePointAt(pos);
+                    pos += Character.charCount(ch);
+                    return new Chars(new int[] { ch, ch });
+                }
+            }
+        }
+
+        // [...] at pos; returns its ranges
+        private int[] charClass() {
+
+            pos++;
+            boolean negated = peek('^');
+            if (negated) {
+                pos++;
+            }
+
+            List<int[]> items = new ArrayList<>();
+            boolean first = true;
+
+            while (pos < text.length() && (first || text.charAt(pos) != ']')) {
+                if (text.startsWith("[:", pos) || (text.charAt(pos) == '[' && !first)) {
+                    throw error("Nested and predefined classes are not supported");
+                }
+                int low = nextChar();
+                int high = low;
+                if (peek('-') && pos + 1 < text.length() && text.charAt(pos + 1) != ']') {
+                    pos++;
+                    high = nextChar();
+                    if (high < low) {
+                        throw error("Bad range in character class");
+                    }
+                }
+                items.add(new int[] { low, high });
+                first = false;
+            }
+            expect(']');
+
+            int[] ranges = normalize(items);
+            return negated ? complement(ranges) : ranges;
+        }
+
+        private int nextChar() {
+            if (text.charAt(pos) == '\\') {
+                return escape();
+            }
+            int ch = text.codePointAt(pos);
+            pos += Character.charCount(ch);
+            return ch;
+        }
+
+        // Escape sequence at pos (which holds the backslash); returns the character
+        private int escape() {
+
+            pos++;
+            if (pos >= text.length()) {
+                throw error("Trailing backslash");
+            }
+            char c = text.charAt(pos++);
+            switch (c) {
+                case 'n': return '\n';
+                case 't': return '\t';
+                case 'r': return '\r';
+                case 'b': return '\b';
+                case 'f': return '\f';
+                case 'u': return hex(4);
+                case 'x': return hex(2);
+                default:  return c;
+            }
+        }
+
+        private int hex(int digits) {
+            if (pos + digits > text.length()) {
+                throw error("Incomplete escape");
+            }
+            int value = Integer.parseInt(text.substring(pos, pos + digits), 16);
+            pos += digits;
+            return value;
+        }
+
+        private int closingBrace() {
+            int close = text.indexOf('}', pos);
+            if (close < 0) {
+                throw error("Unclosed '{'");
+            }
+            return close;
+        }
+
+        private boolean peek(char c) {
+            return pos < text.length() && text.charAt(pos) == c;
+        }
+
+        private void expect(char c) {
+            if (!peek(c)) {
+                throw error("Expected '" + c + "'");
+            }
+            pos++;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at offset " + pos + " in " + text);
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /* ---------- Character sets ---------- */
+
+    private static int[] ranges(int... chars) {
+        List<int[]> items = new ArrayList<>();
+        for (int c : chars) {
+            items.add(new int[] { c, c });
+        }
+        return normalize(items);
+    }
+
+    // Sorted, merged [low, high] pairs
+    private static int[] normalize(List<int[]> items) {
+
+        items.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+        int[] ranges = new int[items.size() * 2];
+        int count = 0;
+        for (int[] item : items) {
+            if (count > 0 && item[0] <= ranges[count - 1] + 1) {
+                ranges[count - 1] = Math.max(ranges[count - 1], item[1]);
+            } else {
+                ranges[count++] = item[0];
+                ranges[count++] = item[1];
+            }
+        }
+        return Arrays.copyOf(ranges, count);
+    }
+
+    private static int[] complement(int[] ranges) {
+
+        int[] result = new int[ranges.length + 2];
+        int count = 0;
+        int next = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                result[count++] = next;
+                result[count++] = ranges[i] - 1;
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= MAX_CHAR) {
+            result[count++] = next;
+            result[count++] = MAX_CHAR;
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
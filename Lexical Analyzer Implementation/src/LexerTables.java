@@ -0,0 +1,262 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+/*
+ * The minimized DFA of a lexer specification, as built by LexerGenerator
+ * and run by SpecLexer.
+ *
+ *   classOf(c)      character class of code point c
+ *   next[s * classes + k]
+ *                   state after reading class k in state s (-1: no move);
+ *                   the start state is 0
+ *   accept[s]       rule whose action runs if the match ends in s (-1: none)
+ *
+ * Tables are cached on disk next to the specification, tagged with a hash
+ * of the specification text and of the generator's code (see
+ * CodeFingerprint), so a run only regenerates them after the specification
+ * or the generator changes.
+ */
+public class LexerTables {
+
+    static final byte[] MAGIC = { 'W', 'D', 'F', 'A' };
+    static final int VERSION = 1;
+
+    private final long specHash;
+
+    // Code point intervals: [intervalStarts[i], intervalStarts[i + 1]) is in intervalClass[i]
+    private final int[] intervalStarts;
+    private final int[] intervalClass;
+    private final char[] bmpClass = new char[0x10000];      // the same, looked up directly
+
+    private final int classes;
+    private final int[] next;
+    private final int[] accept;
+    private final LexerSpec.Action[] actions;
+
+    LexerTables(long specHash, int[] intervalStarts, int[] intervalClass,
+                int classes, int[] next, int[] accept, LexerSpec.Action[] actions) {
+
+        this.specHash = specHash;
+        this.intervalStarts = intervalStarts;
+        this.intervalClass = intervalClass;
+        this.classes = classes;
+        this.next = next;
+        this.accept = accept;
+        this.actions = actions;
+
+        for (int i = 0; i < intervalStarts.length && intervalStarts[i] < bmpClass.length; i++) {
+            int end = (i + 1 < intervalStarts.length)
+                    ? Math.min(intervalStarts[i + 1], bmpClass.length)
+                    : bmpClass.length;
+            Arrays.fill(bmpClass, intervalStarts[i], end, (char) intervalClass[i]);
+        }
+    }
+
+    /* ---------- Loading ---------- */
+
+    /* Tables for a specification file, from the cache file if it is current */
+    public static LexerTables load(Path spec, Path cache) throws IOException {
+        String text = new String(Files.readAllBytes(spec), StandardCharsets.UTF_8);
+        return forSpec(text, cache);
+    }
+
+    public static LexerTables load(Path spec) throws IOException {
+        return load(spec, defaultCache(spec));
+    }
+
+    /* Scanner.flex from the class path, cached in the temporary directory */
+    public static LexerTables builtin() throws IOException {
+
+        try (InputStream in = LexerTables.class.getResourceAsStream("/Scanner.flex")) {
+            if (in == null) {
+                throw new FileNotFoundException("Scanner.flex is not on the class path");
+            }
+            String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            Path cache = Paths.get(System.getProperty("java.io.tmpdir"),
+                    String.format("Scanner.flex-%016x.dfa", hash(text)));
+            return forSpec(text, cache);
+        }
+    }
+
+    public static Path defaultCache(Path spec) {
+        return spec.resolveSibling(spec.getFileName() + ".dfa");
+    }
+
+    static LexerTables forSpec(String text, Path cache) throws IOException {
+
+        long hash = hash(text);
+
+        if (Files.exists(cache)) {
+            try {
+                LexerTables tables = read(cache);
+                if (tables.specHash == hash) {
+                    return tables;
+                }
+            } catch (IOException | RuntimeException e) {
+                // Unreadable or from an older generator: build them again
+            }
+        }
+
+        LexerTables tables = LexerGenerator.generate(text, hash);
+        try {
+            tables.save(cache);
+        } catch (IOException e) {
+            // Read-only location: run without a cache
+        }
+        return tables;
+    }
+
+    /* Hash of the specification text and the generator's code */
+    static long hash(String text) throws IOException {
+
+        long generator = CodeFingerprint.of(LexerGenerator.class);
+        byte[] bytes = (VERSION + ":" + generator + "\n" + text).getBytes(StandardCharsets.UTF_8);
+        CRC32C crc32c = new CRC32C();
+        crc32c.update(bytes);
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes);
+        return (crc32c.getValue() << 32) | crc32.getValue();
+    }
+
+    /* ---------- Lookup ---------- */
+
+    public int classOf(int codePoint) {
+
+        if (codePoint < bmpClass.length) {
+            return bmpClass[codePoint];
+        }
+        int i = Arrays.binarySearch(intervalStarts, codePoint);
+        return intervalClass[(i >= 0) ? i : -i - 2];
+    }
+
+    public int getClassCount() {
+        return classes;
+    }
+
+    public int getStateCount() {
+        return accept.length;
+    }
+
+    public int getRuleCount() {
+        return actions.length;
+    }
+
+    public LexerSpec.Action getAction(int rule) {
+        return actions[rule];
+    }
+
+    char[] bmpClasses() {
+        return bmpClass;
+    }
+
+    int[] transitions() {
+        return next;
+    }
+
+    int[] accepting() {
+        return accept;
+    }
+
+    /* ---------- Serialized form ---------- */
+
+    /*
+     *   "WDFA", version, specification hash
+     *   intervals   count, then (start, class) per interval
+     *   classes, states, then next[] and accept[]
+     *   actions     count, then (kind, token type, error type, reason);
+     *               absent names and reasons are empty strings
+     */
+    public void save(Path file) throws IOException {
+
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp)))) {
+
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(specHash);
+
+                out.writeInt(intervalStarts.length);
+                for (int i = 0; i < intervalStarts.length; i++) {
+                    out.writeInt(intervalStarts[i]);
+                    out.writeInt(intervalClass[i]);
+                }
+
+                out.writeInt(classes);
+                out.writeInt(accept.length);
+                for (int target : next) {
+                    out.writeInt(target);
+                }
+                for (int rule : accept) {
+                    out.writeInt(rule);
+                }
+
+                out.writeInt(actions.length);
+                for (LexerSpec.Action action : actions) {
+                    out.writeUTF(action.kind.name());
+                    out.writeUTF(action.type == null ? "" : action.type.name());
+                    out.writeUTF(action.error == null ? "" : action.error.name());
+                    out.writeUTF(action.reason == null ? "" : action.reason);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public static LexerTables read(Path file) throws IOException {
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+
+            for (byte b : MAGIC) {
+                if (in.readByte() != b) {
+                    throw new IOException("Not a lexer table file: " + file);
+                }
+            }
+            if (in.readInt() != VERSION) {
+                throw new IOException("Lexer tables from another generator version: " + file);
+            }
+            long specHash = in.readLong();
+
+            int intervals = in.readInt();
+            int[] intervalStarts = new int[intervals];
+            int[] intervalClass = new int[intervals];
+            for (int i = 0; i < intervals; i++) {
+                intervalStarts[i] = in.readInt();
+                intervalClass[i] = in.readInt();
+            }
+
+            int classes = in.readInt();
+            int states = in.readInt();
+            int[] next = new int[states * classes];
+            for (int i = 0; i < next.length; i++) {
+                next[i] = in.readInt();
+            }
+            int[] accept = new int[states];
+            for (int i = 0; i < states; i++) {
+                accept[i] = in.readInt();
+            }
+
+            LexerSpec.Action[] actions = new LexerSpec.Action[in.readInt()];
+            for (int i = 0; i < actions.length; i++) {
+                LexerSpec.Kind kind = LexerSpec.Kind.valueOf(in.readUTF());
+                String type = in.readUTF();
+                String error = in.readUTF();
+                String reason = in.readUTF();
+                actions[i] = new LexerSpec.Action(kind,
+                        type.isEmpty() ? null : TokenType.valueOf(type),
+                        error.isEmpty() ? null : ErrorHandler.ErrorType.valueOf(error),
+                        (kind == LexerSpec.Kind.ERROR) ? reason : null);
+            }
+
+            return new LexerTables(specHash, intervalStarts, intervalClass, classes, next, accept, actions);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/*
+ * Offsets at which the lines of a program start, found in one pass over
+ * the text. A token that only records its start offset can then have its
+ * line and column worked out when someone asks for them, by binary search,
+ * instead of the scanner counting lines and columns on every character.
+ *
+ * Lines and columns are 1-based, and a column counts chars from the start
+ * of the line, as ManualScanner and Yylex count them.
+ *
+ * An index can also be filled while the text is read (see indexing()), for
+ * Yylex, which never holds the whole input. Every offset a token can have
+ * has been read by the time the token exists, so lookups are answered from
+ * the lines seen so far.
+ */
+public final class LineIndex {
+
+    private int[] starts;           // starts[i] is the offset of line i + 1
+    private int count;
+
+    // Indexing a text as it is read: offset of the next char, and whether the last one was '\r'
+    private int indexed = 0;
+    private boolean afterCr = false;
+
+    private LineIndex(int[] starts, int count) {
+        this.starts = starts;
+        this.count = count;
+    }
+
+    /* Lines end at '\n' only (ManualScanner's rule) */
+    public static LineIndex of(CharSequence text) {
+
+        int[] starts = new int[64];
+        int count = 1;
+
+        if (text instanceof String) {
+            // indexOf is an intrinsic; it beats a charAt loop by a wide margin
+            String string = (String) text;
+            int pos = -1;
+            while ((pos = string.indexOf('\n', pos + 1)) >= 0) {
+                starts = grow(starts, count);
+                starts[count++] = pos + 1;
+            }
+        } else {
+            int length = text.length();
+            for (int pos = 0; pos < length; pos++) {
+                if (text.charAt(pos) == '\n') {
+                    starts = grow(starts, count);
+                    starts[count++] = pos + 1;
+                }
+            }
+        }
+        return new LineIndex(starts, count);
+    }
+
+    /*
+     * Lines end the way JFlex's %line counts them: \r\n is one line break,
+     * and \r, \n, \u000B, \u000C, \u0085, \u2028 and \u2029 each end a line
+     * on their own (SpecLexer's and Yylex's rule).
+     */
+    public static LineIndex ofUnicode(CharSequence text) {
+
+        LineIndex index = unicode();
+        int length = text.length();
+        for (int pos = 0; pos < length; pos++) {
+            index.addUnicode(text.charAt(pos), pos);
+        }
+        index.indexed = length;
+        return index;
+    }
+
+    /* An empty index for JFlex's line rule, filled through indexing() */
+    public static LineIndex unicode() {
+        return new LineIndex(new int[64], 1);
+    }
+
+    /*
+     * A reader that passes in's text through and adds the line breaks in it
+     * to this index (JFlex's rule), offsets counting from the first char.
+     */
+    public Reader indexing(Reader in) {
+
+        return new Reader() {
+
+            @Override
+            public int read(char[] chars, int offset, int length) throws IOException {
+
+                int read = in.read(chars, offset, length);
+                for (int i = 0; i < read; i++) {
+                    addUnicode(chars[offset + i], indexed + i);
+                }
+                if (read > 0) {
+                    indexed += read;
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+
+    // Record the line break c at pos, if it is one
+    private void addUnicode(char c, int pos) {
+
+        switch (c) {
+            case '\n':
+                if (afterCr) {
+                    // Same break as the \r; the line still starts after the \n
+                    starts[count - 1] = pos + 1;
+                    afterCr = false;
+                } else {
+                    addLine(pos + 1);
+                }
+                break;
+            case '\r':
+                addLine(pos + 1);
+                afterCr = true;
+                break;
+            case '\u000B':
+            case '\u000C':
+            case '\u0085':
+            case '\u2028':
+            case '\u2029':
+                addLine(pos + 1);
+                break;
+            default:
+                afterCr = false;
+                break;
+        }
+    }
+
+    private void addLine(int start) {
+        starts = grow(starts, count);
+        starts[count++] = start;
+        afterCr = false;
+    }
+
+    private static int[] grow(int[] starts, int count) {
+        return (count < starts.length) ? starts : Arrays.copyOf(starts, count * 2);
+    }
+
+    /* Line of the char at offset */
+    public int line(int offset) {
+        int i = Arrays.binarySearch(starts, 0, count, offset);
+        return (i >= 0) ? i + 1 : -i - 1;
+    }
+
+    /* Column of the char at offset */
+    public int column(int offset) {
+        return offset - starts[line(offset) - 1] + 1;
+    }
+
+    public int getLineCount() {
+        return count;
+    }
+}
@@ -1,20 +1,18 @@
 public class Main {
     public static void main(String[] args) {
-        // Read testInput from test1.lang file
-        String testInput = readFile("test5.lang");
-        
-        ManualScanner scanner = new ManualScanner(testInput);
-        java.util.List<Token> tokens = scanner.scan();
+        // Stream the program from test5.lang instead of loading it into a String
+        ManualScanner scanner = new ManualScanner(openFile("test5.lang"));
 
+        // Tokens are produced on demand as the loop pulls them
         System.out.println("=== Generated Tokens ===");
-        for (Token token : tokens) {
+        for (Token token : scanner) {
             System.out.println(token);
         }
         
         System.out.println("\n=== Lexical Errors ===");
         ErrorHandler errorHandler = scanner.getErrorHandler();
         if (errorHandler.getErrorCount() > 0) {
-            errorHandler.print();
+            errorHandler.printSummary();
         } else {
             System.out.println("No errors found.");
         }
@@ -24,17 +22,17 @@ public class Main {
         
         System.out.println("\n=== Symbol Table ===");
         // Use the symbol table populated by the scanner
-        SymbolTable symbolTable = scanner.getSymbolTable();
-        symbolTable.print();
+        SymbolStore symbolTable = scanner.getSymbolTable();
+        symbolTable.printTable();
     }
 
-    private static String readFile(String filename) {
+    private static java.io.Reader openFile(String filename) {
         try {
-            return new String(java.nio.file.Files.readAllBytes(java.nio.file.Paths.get(filename)));
+            return new java.io.FileReader(filename);
         } catch (java.io.IOException e) {
             System.err.println("Error reading file: " + filename);
             e.printStackTrace();
-            return "";
+            return new java.io.StringReader("");
         }
     }
 }
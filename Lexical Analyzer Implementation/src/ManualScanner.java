@@ -1,115 +1,740 @@
 import java.util.*;
 import java.io.*;
-
-public class ManualScanner {
-
-    private String input;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class ManualScanner implements Iterable<Token> {
+
+    private SourceBuffer input;
     private int position;
     private int line;
     private int column;
 
     private List<Token> tokens = new ArrayList<>();
-    private Map<TokenType, Integer> statistics = new HashMap<>();
+    private final int[] statistics = new int[TokenType.values().length];  // by ordinal
+    private int totalTokens = 0;
     
+    // Range and position of the token recognised by the last scanToken() call
+    private int tokenStart;
+    private int tokenEnd;
+    private int tokenLine;
+    private int tokenColumn;
+    private String tokenLexeme;     // non-null when the lexeme was already built
+    private int tokenSymbolId;      // symbol ID for identifiers, -1 otherwise
+    private long tokenValue;        // decoded literal (long, or double bits), 0 otherwise
+
+    // Decodes integer and float literals from their source range
+    private final NumberDecoder numbers = new NumberDecoder();
+
+    // Minimum chunk size for scanParallel(); smaller inputs are scanned sequentially
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+
     private int whitespacesSkipped = 0;
     private int commentsSkipped = 0;
 
-    private SymbolTable symbolTable = new SymbolTable();
+    private SymbolStore symbolTable = new SymbolTable();
     private ErrorHandler errorHandler = new ErrorHandler();
 
+    // When set, the DFA runs off the compiled tables below instead of transition()
+    private boolean tableDriven = false;
+
+    /*
+     * Lazy positions: line and column are not counted per character.
+     * Tokens carry their start offset, and lines is built in one pass over
+     * the text; a position is only looked up when a token is printed, an
+     * identifier goes into the symbol table or an error is reported.
+     */
+    private LineIndex lines;
+
+    /*
+     * Run skipping: spaces, comment bodies, and the states that loop on
+     * digits (q2, q27, q28), on [a-z0-9_] (q10) or on string characters
+     * (q5) are crossed with one CharRuns call (vectorized, or 8 bytes at a
+     * time on mapped input) instead of one DFA step per character. null
+     * means every character goes through the DFA.
+     */
+    private CharRuns runs;
+
+    /*
+     * Panic-mode recovery: after an error, skip to the next synchronization
+     * point (space, tab, newline or '#') instead of re-lexing the rest of the
+     * bad word, and merge errors that follow each other on a line into one
+     * span-based error. Garbage input then costs one pass over the
+     * characters, not one DFA run and one error object per character.
+     */
+    private boolean panicMode = false;
+
+    // Error span being built in panic mode (reported when a token, newline or EOF ends it)
+    private static final int MAX_ERROR_LEXEME = 64;
+    private final StringBuilder spanText = new StringBuilder();
+    private ErrorHandler.ErrorType spanType;
+    private String spanReason;
+    private int spanLine;
+    private int spanColumn;
+    private int spanErrors = 0;
+    private boolean spanTruncated;
+    private boolean recovering = false;     // the last scanToken() call hit an error
+
+    /* ---------- Compiled DFA tables (table-driven mode) ---------- */
+
+    // Character classes: every character in a class behaves identically in transition()
+    private static final int CC_OTHER      = 0;
+    private static final int CC_DIGIT      = 1;
+    private static final int CC_SIGN       = 2;   // + -
+    private static final int CC_QUOTE      = 3;   // "
+    private static final int CC_BACKSLASH  = 4;   // \
+    private static final int CC_NEWLINE    = 5;   // \n
+    private static final int CC_DOT        = 6;
+    private static final int CC_UNDERSCORE = 7;
+    private static final int CC_LOWER_E    = 8;   // e (lowercase + exponent)
+    private static final int CC_UPPER_E    = 9;   // E (uppercase + exponent)
+    private static final int CC_A          = 10;  // letters used by "true"/"false" and escapes
+    private static final int CC_F          = 11;
+    private static final int CC_L          = 12;
+    private static final int CC_N          = 13;
+    private static final int CC_R          = 14;
+    private static final int CC_S          = 15;
+    private static final int CC_T          = 16;
+    private static final int CC_U          = 17;
+    private static final int CC_LOWER      = 18;  // any other lowercase letter
+    private static final int CC_UPPER      = 19;  // any other uppercase letter
+    private static final int NUM_CLASSES   = 20;
+
+    // One representative character per class, used to compile the table from transition()
+    private static final char[] CLASS_REPRESENTATIVE = {
+            '@', '0', '+', '"', '\\', '\n', '.', '_', 'e', 'E',
+            'a', 'f', 'l', 'n', 'r', 's', 't', 'u', 'b', 'A'
+    };
+
+    private static final int NUM_STATES = 29;  // q0 - q28
+
+    // Validation performed by createToken before the token is emitted
+    private static final int CHECK_NONE       = 0;
+    private static final int CHECK_INTEGER    = 1;  // malformed integer (q2)
+    private static final int CHECK_IDENTIFIER = 2;  // length + keyword (q9, q10)
+    private static final int CHECK_DECIMALS   = 3;  // max 6 decimals + range (q28)
+    private static final int CHECK_FLOAT      = 4;  // range (q27)
+
+    private static final byte[] ASCII_CLASS = new byte[128];
+    private static final int[] NEXT_STATE = new int[NUM_STATES * NUM_CLASSES];
+    private static final boolean[] ACCEPTING = new boolean[NUM_STATES];
+    private static final TokenType[] STATE_TOKEN_TYPE = new TokenType[NUM_STATES];
+    private static final byte[] STATE_CHECK = new byte[NUM_STATES];
+
+    // CharRuns set a state loops on (every ASCII member maps the state to itself), -1 if none
+    private static final byte[] STATE_RUN = new byte[NUM_STATES];
+
+    private static final String[] KEYWORDS = {
+            "start", "finish", "loop", "condition",
+            "declare", "output", "input",
+            "function", "return", "break",
+            "continue", "else"
+    };
+
+    private static final int MIN_KEYWORD_LENGTH;
+    private static final int MAX_KEYWORD_LENGTH;
+
+    // [length * 26 + (first letter - 'a')] -> keywords with that length and first letter
+    private static final String[][] KEYWORD_BUCKETS;
+
+    static {
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        for (String keyword : KEYWORDS) {
+            min = Math.min(min, keyword.length());
+            max = Math.max(max, keyword.length());
+        }
+        MIN_KEYWORD_LENGTH = min;
+        MAX_KEYWORD_LENGTH = max;
+
+        KEYWORD_BUCKETS = new String[(max + 1) * 26][];
+        for (String keyword : KEYWORDS) {
+            int slot = keyword.length() * 26 + (keyword.charAt(0) - 'a');
+            String[] bucket = KEYWORD_BUCKETS[slot];
+            if (bucket == null) {
+                KEYWORD_BUCKETS[slot] = new String[] { keyword };
+            } else {
+                bucket = Arrays.copyOf(bucket, bucket.length + 1);
+                bucket[bucket.length - 1] = keyword;
+                KEYWORD_BUCKETS[slot] = bucket;
+            }
+        }
+    }
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            ASCII_CLASS[c] = (byte) classify(c);
+        }
+
+        // Compile the switch-based DFA into a flat [state * NUM_CLASSES + class] table
+        for (int state = 0; state < NUM_STATES; state++) {
+            for (int cls = 0; cls < NUM_CLASSES; cls++) {
+                NEXT_STATE[state * NUM_CLASSES + cls] =
+                        transition(state, CLASS_REPRESENTATIVE[cls]);
+            }
+            ACCEPTING[state] = isAccepting(state);
+        }
+
+        STATE_TOKEN_TYPE[1]  = TokenType.BOOLEAN_LITERAL;
+        STATE_TOKEN_TYPE[2]  = TokenType.INTEGER_LITERAL;
+        STATE_TOKEN_TYPE[9]  = TokenType.IDENTIFIER;
+        STATE_TOKEN_TYPE[10] = TokenType.IDENTIFIER;
+        STATE_TOKEN_TYPE[16] = TokenType.STRING_LITERAL;
+        STATE_TOKEN_TYPE[25] = TokenType.BOOLEAN_LITERAL;
+        STATE_TOKEN_TYPE[27] = TokenType.FLOAT_LITERAL;
+        STATE_TOKEN_TYPE[28] = TokenType.FLOAT_LITERAL;
+
+        Arrays.fill(STATE_RUN, (byte) -1);
+        STATE_RUN[2]  = CharRuns.DIGITS;
+        STATE_RUN[5]  = CharRuns.STRING_BODY;
+        STATE_RUN[10] = CharRuns.IDENTIFIER_TAIL;
+        STATE_RUN[27] = CharRuns.DIGITS;
+        STATE_RUN[28] = CharRuns.DIGITS;
+
+        STATE_CHECK[2]  = CHECK_INTEGER;
+        STATE_CHECK[9]  = CHECK_IDENTIFIER;
+        STATE_CHECK[10] = CHECK_IDENTIFIER;
+        STATE_CHECK[27] = CHECK_FLOAT;
+        STATE_CHECK[28] = CHECK_DECIMALS;
+    }
+
     public ManualScanner(String input) {
+        this(SourceBuffer.of(input));
+    }
+
+    // Stream the program from a reader; only the token being scanned is kept in memory
+    public ManualScanner(Reader reader) {
+        this(SourceBuffer.of(reader));
+    }
+
+    public ManualScanner(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8));
+    }
+
+    // Scan a memory-mapped file (see SourceBuffer.map)
+    public static ManualScanner mapped(Path file) throws IOException {
+        return new ManualScanner(SourceBuffer.map(file));
+    }
+
+    public ManualScanner(SourceBuffer input) {
+        this(input, 0, 1, 1);
+    }
+
+    // Scanner that starts part-way through the input (parallel chunks, incremental re-lexing)
+    ManualScanner(SourceBuffer input, int position, int line, int column) {
         this.input = input;
-        this.position = 0;
-        this.line = 1;
-        this.column = 1;
+        this.position = position;
+        this.line = line;
+        this.column = column;
+    }
 
-        for (TokenType type : TokenType.values()) {
-            statistics.put(type, 0);
+    // Switch between the compiled transition table and the reference switch-based DFA
+    public void setTableDriven(boolean tableDriven) {
+        this.tableDriven = tableDriven;
+    }
+
+    public void setPanicMode(boolean panicMode) {
+        this.panicMode = panicMode;
+    }
+
+    public boolean isPanicMode() {
+        return panicMode;
+    }
+
+    public boolean isTableDriven() {
+        return tableDriven;
+    }
+
+    // Needs String or mapped input (the whole text is indexed up front)
+    public void setLazyPositions(boolean lazy) {
+
+        if (!lazy) {
+            lines = null;
+            return;
+        }
+        CharSequence text = input.text();
+        if (text == null) {
+            throw new IllegalStateException("Lazy positions need String or mapped input");
         }
+        lines = LineIndex.of(text);
+    }
+
+    public boolean isLazyPositions() {
+        return lines != null;
+    }
+
+    // CharRuns.get() for the fastest available runs, null to step the DFA on every character
+    public void setCharRuns(CharRuns runs) {
+        this.runs = runs;
+    }
+
+    public CharRuns getCharRuns() {
+        return runs;
     }
 
     public List<Token> scan() {
 
-        while (position < input.length()) {
+        Token token;
+        while ((token = nextToken()) != null) {
+            tokens.add(token);
+        }
+
+        return tokens;
+    }
+
+    /*
+     * Same result as scan(), lexed in parallel.
+     *
+     * No token or error can span a newline (strings stop at '\n' and comments
+     * end there), and the DFA always starts a line in q0, so the input is cut
+     * into chunks just after a newline and each chunk is lexed by its own
+     * scanner. A first parallel pass counts newlines so every chunk knows its
+     * starting line; tokens, statistics, symbols and errors are then folded
+     * back in chunk order. Needs String or mapped input.
+     *
+     * With an error limit the input is scanned sequentially: scan() stops at
+     * the token that reaches the limit, and errors carry no offset to cut
+     * the merged chunks at the same place.
+     */
+    public List<Token> scanParallel(ForkJoinPool pool) {
+
+        CharSequence text = input.text();
+        if (text == null) {
+            throw new IllegalStateException("Parallel scan needs String or mapped input");
+        }
+
+        if (errorHandler.getErrorLimit() != Integer.MAX_VALUE) {
+            return scan();
+        }
+
+        int[] bounds = chunkBounds(text, position, text.length(), pool.getParallelism());
+        int chunks = bounds.length - 1;
+        if (chunks <= 1) {
+            return scan();
+        }
+
+        // Pass 1: newlines per chunk, then prefix sums give each chunk's first line
+        List<ForkJoinTask<Integer>> newlineCounts = new ArrayList<>();
+        for (int i = 0; i < chunks; i++) {
+            int from = bounds[i];
+            int to = bounds[i + 1];
+            newlineCounts.add(pool.submit(() -> countNewlines(text, from, to)));
+        }
+
+        int[] startLines = new int[chunks];
+        startLines[0] = line;
+        for (int i = 1; i < chunks; i++) {
+            startLines[i] = startLines[i - 1] + newlineCounts.get(i - 1).join();
+        }
+
+        // Pass 2: lex every chunk with its own scanner
+        List<ForkJoinTask<ManualScanner>> parts = new ArrayList<>();
+        List<SymbolTable> chunkSymbols = new ArrayList<>();
+        for (int i = 0; i < chunks; i++) {
+            ManualScanner chunk = new ManualScanner(input.limit(bounds[i + 1]),
+                    bounds[i], startLines[i], (i == 0) ? column : 1);
+            SymbolTable symbols = new SymbolTable();
+            chunk.symbolTable = symbols;
+            chunkSymbols.add(symbols);
+            chunk.tableDriven = tableDriven;
+            chunk.panicMode = panicMode;
+            chunk.lines = lines;    // offsets are absolute, so the index is shared
+            chunk.runs = runs;
+            chunk.errorHandler.setEcho(false);
+            parts.add(pool.submit(() -> {
+                chunk.scan();
+                return chunk;
+            }));
+        }
+
+        for (int i = 0; i < chunks; i++) {
+            absorb(parts.get(i).join(), chunkSymbols.get(i));
+        }
+
+        return tokens;
+    }
+
+    // Chunk boundaries: roughly equal pieces, each ending just after a newline
+    private static int[] chunkBounds(CharSequence text, int start, int end, int parallelism) {
+
+        int target = Math.max(MIN_CHUNK_SIZE, (end - start) / (parallelism * 4));
+
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(start);
+
+        int from = start;
+        while (end - from > target) {
+            int cut = from + target;
+            while (cut < end && text.charAt(cut - 1) != '\n') {
+                cut++;
+            }
+            if (cut >= end) {
+                break;
+            }
+            bounds.add(cut);
+            from = cut;
+        }
+        bounds.add(end);
+
+        int[] result = new int[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static int countNewlines(CharSequence text, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Fold a finished chunk scanner into this one, as if this scanner had lexed it
+    private void absorb(ManualScanner chunk, SymbolTable chunkSymbols) {
+
+        // Chunk symbol IDs are local to the chunk's table; renumber them into ours
+        int[] ids = symbolTable.addAll(chunkSymbols);
+        for (Token token : chunk.tokens) {
+            if (token.getSymbolId() >= 0) {
+                token = token.withSymbolId(ids[token.getSymbolId()]);
+            }
+            tokens.add(token);
+        }
+        totalTokens += chunk.totalTokens;
+        for (int i = 0; i < statistics.length; i++) {
+            statistics[i] += chunk.statistics[i];
+        }
+        whitespacesSkipped += chunk.whitespacesSkipped;
+        commentsSkipped += chunk.commentsSkipped;
+
+        errorHandler.addAll(chunk.errorHandler);
+
+        position = chunk.position;
+        line = chunk.line;
+        column = chunk.column;
+    }
+
+    /*
+     * Pull the next token (comments are skipped, errors are reported and
+     * skipped). Returns null at end of input. Statistics are updated as each
+     * token is produced, so a caller can consume tokens one at a time
+     * without the scanner holding on to them.
+     *
+     * When the source text stays addressable the Token only records the
+     * lexeme's range, and its String is built if getLexeme() is called.
+     */
+    public Token nextToken() {
+
+        TokenType type = nextTokenType();
+        if (type == null) {
+            return null;
+        }
+
+        CharSequence text = input.text();
+        Token token;
+        if (lines != null) {
+            token = new Token(type, text, tokenStart, tokenEnd, lines, tokenSymbolId);
+        } else if (tokenLexeme == null && text != null) {
+            token = new Token(type, text, tokenStart, tokenEnd, tokenLine, tokenColumn, tokenSymbolId);
+        } else {
+            token = new Token(type, tokenText(), tokenLine, tokenColumn, tokenSymbolId);
+        }
+        token.setValue(tokenValue);
+        return token;
+    }
+
+    /*
+     * Scan the rest of the input into a compact TokenBuffer instead of a
+     * List<Token>. When the source text is retained (String or mapped input)
+     * the buffer only records offsets into it; for streamed input the
+     * lexemes are copied into the buffer's own character pool.
+     */
+    public TokenBuffer scanToBuffer() {
+
+        CharSequence text = input.text();
+        TokenBuffer buffer = (text != null) ? new TokenBuffer(text) : new TokenBuffer();
+
+        TokenType type;
+        while ((type = nextTokenType()) != null) {
+            if (text != null) {
+                buffer.add(type, tokenStart, tokenEnd - tokenStart,
+                        resolvedTokenLine(), resolvedTokenColumn(), tokenSymbolId);
+            } else {
+                CharSequence lexeme = (tokenLexeme != null)
+                        ? tokenLexeme
+                        : input.subSequence(tokenStart, tokenEnd);
+                buffer.add(type, lexeme, tokenLine, tokenColumn, tokenSymbolId);
+            }
+        }
+
+        return buffer;
+    }
+
+    /*
+     * Scan the rest of the input straight into a binary token stream. Each
+     * record's lexeme is deduplicated from its source range, so no Token or
+     * String is built per token.
+     */
+    public void writeTokens(TokenStreamWriter writer) throws IOException {
+
+        TokenType type;
+        while ((type = nextTokenType()) != null) {
+            writer.write(type, input, tokenStart, tokenEnd,
+                    resolvedTokenLine(), resolvedTokenColumn(), tokenStart);
+        }
+    }
+
+    // Advance to the next counted token and return its type (null at end of input)
+    private TokenType nextTokenType() {
+
+        // Stop-after-N errors policy: behave as if the input ended here
+        while (input.has(position) && !errorHandler.isLimitReached()) {
+
+            // Nothing before this point is looked at again
+            input.release(position);
 
             char current = peek();
 
             // Skip newline/tab/carriage-return characters which are separators in the DFA
             if (current == '\n' || current == '\r' || current == '\t') {
+                if (current == '\n') {
+                    endErrorSpan();
+                }
                 advance();
                 continue;
             }
 
             // Whitespace (spaces) are still handled by the DFA
-            Token token = nextToken();
+            TokenType type = scanToken();
+
+            if (recovering) {
+                recovering = false;
+                skipToSyncPoint();
+                continue;
+            }
+
+            if (type != null) {
+                endErrorSpan();
 
-            if (token != null) {
                 // Don't count comments in the total token count
-                if (!token.getType().toString().equals("SINGLE_LINE_COMMENT")) {
-                    tokens.add(token);
-                    statistics.put(token.getType(),
-                            statistics.get(token.getType()) + 1);
+                if (type != TokenType.SINGLE_LINE_COMMENT) {
+                    totalTokens++;
+                    statistics[type.ordinal()]++;
+                    return type;
                 }
             }
         }
 
-        return tokens;
+        endErrorSpan();
+        return null;
     }
 
-    private Token nextToken() {
+    /*
+     * Report a lexical error on input[start, end). In panic mode the error
+     * starts (or extends) the current error span instead; the caller's
+     * position is then moved on to the next synchronization point.
+     */
+    private void lexicalError(ErrorHandler.ErrorType type, int line, int column,
+                              int start, int end, String reason) {
+
+        if (lines != null) {
+            line = lines.line(start);
+            column = lines.column(start);
+        }
+
+        if (!panicMode) {
+            errorHandler.reportError(type, line, column, input.substring(start, end), reason);
+            return;
+        }
+
+        if (spanErrors == 0) {
+            spanType = type;
+            spanReason = reason;
+            spanLine = line;
+            spanColumn = column;
+            spanTruncated = false;
+            spanText.setLength(0);
+        } else {
+            appendSpanText(' ');
+        }
+        spanErrors++;
+
+        for (int i = start; i < end; i++) {
+            appendSpanText(input.charAt(i));
+        }
+        recovering = true;
+    }
+
+    // Skip the rest of a bad word; everything skipped belongs to the error span
+    private void skipToSyncPoint() {
+        while (input.has(position)) {
+            char c = peek();
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '#') {
+                break;
+            }
+            appendSpanText(c);
+            advance();
+        }
+    }
+
+    private void appendSpanText(char c) {
+        if (spanText.length() < MAX_ERROR_LEXEME) {
+            spanText.append(c);
+        } else {
+            spanTruncated = true;
+        }
+    }
+
+    // Report the pending error span, if any, as a single error
+    private void endErrorSpan() {
+
+        if (spanErrors == 0) {
+            return;
+        }
+
+        String lexeme = spanTruncated ? spanText + "..." : spanText.toString();
+        String reason = (spanErrors == 1)
+                ? spanReason
+                : spanReason + " (" + spanErrors + " errors merged)";
+
+        errorHandler.reportError(spanType, spanLine, spanColumn, lexeme, reason);
+        spanErrors = 0;
+    }
+
+    // Position of the last token (looked up in lazy mode)
+    private int resolvedTokenLine() {
+        return (lines != null) ? lines.line(tokenStart) : tokenLine;
+    }
+
+    private int resolvedTokenColumn() {
+        return (lines != null) ? lines.column(tokenStart) : tokenColumn;
+    }
+
+    private String tokenText() {
+        if (tokenLexeme == null) {
+            tokenLexeme = input.substring(tokenStart, tokenEnd);
+        }
+        return tokenLexeme;
+    }
+
+    // Lazy, single-pass iteration over the remaining tokens
+    @Override
+    public Iterator<Token> iterator() {
+
+        return new Iterator<Token>() {
+
+            private Token next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    next = nextToken();
+                }
+                return next != null;
+            }
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Token token = next;
+                next = null;
+                return token;
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<Token> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    // Stream view of the remaining tokens; lexing happens as the stream is consumed
+    public Stream<Token> tokens() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    private TokenType scanToken() {
+
+        tokenLexeme = null;
+        tokenSymbolId = -1;
+        tokenValue = 0;
 
         int startPos = position;
         int startLine = line;
         int startColumn = column;
 
         // Skip spaces (whitespace) but not comments
-        while (position < input.length() && peek() == ' ') {
+        if (runs != null) {
+            int end = input.skipRun(position, CharRuns.SPACES, runs);
+            column += end - position;
+            position = end;
+            whitespacesSkipped += position - startPos;
+        }
+        while (input.has(position) && peek() == ' ') {
             advance();
             whitespacesSkipped++;
+            input.release(position);    // a long run of spaces must not grow a streamed buffer
         }
 
         // If we're at end of file, return null
-        if (position >= input.length()) {
+        if (!input.has(position)) {
             return null;
         }
 
-        // Check if this is a comment
-        if (peek() == '#') {
+        // Check if this is a comment (## as in Scanner.flex; a lone # is an invalid character)
+        if (peek() == '#' && input.has(position + 1) && input.charAt(position + 1) == '#') {
+            int commentStart = position;
             int commentStartCol = column;
-            StringBuilder commentContent = new StringBuilder();
-            
-            // Read the entire comment line
-            while (position < input.length() && peek() != '\n' && peek() != '\r') {
-                commentContent.append(peek());
-                advance();
-            }
+
+            // Skip the rest of the line in one search; the text is never needed
+            input.release(commentStart);
+            position = (runs != null)
+                    ? input.skipRun(commentStart, CharRuns.LINE, runs)
+                    : input.lineEnd(commentStart);
+            column += position - commentStart;
             commentsSkipped++;
             
-            // Create a comment token but don't count it in statistics
-            return new Token(TokenType.SINGLE_LINE_COMMENT, commentContent.toString(), startLine, commentStartCol);
+            // Report a comment token but don't count it in statistics
+            setToken(commentStart, position, startLine, commentStartCol);
+            return TokenType.SINGLE_LINE_COMMENT;
         }
 
         // Update start position after skipping whitespace
+        input.release(position);
         startPos = position;
         startLine = line;
         startColumn = column;
 
         // Quick path: handle lowercase-starting keywords or error
-        if (position < input.length() && isLowerCase(peek()) && peek() != 't' && peek() != 'f') {
+        if (input.has(position) && isLowerCase(peek()) && peek() != 't' && peek() != 'f') {
             int kwLine = line;
             int kwCol = column;
-            StringBuilder sb = new StringBuilder();
-            while (position < input.length() && isLowerCase(peek())) {
-                sb.append(peek());
+            while (input.has(position) && isLowerCase(peek())) {
                 advance();
             }
-            String kw = sb.toString();
-            if (isKeyword(kw)) {
-                return new Token(TokenType.KEYWORD, kw, kwLine, kwCol);
+            String kw = matchKeyword(startPos, position);
+            if (kw != null) {
+                setToken(startPos, position, kwLine, kwCol);
+                tokenLexeme = kw;
+                return TokenType.KEYWORD;
             } else {
                 // Lowercase identifiers are not allowed - this is an error
                 String errorMsg = "Identifier must start with uppercase letter";
-                errorHandler.add(kw, errorMsg, kwLine, kwCol);
+                lexicalError(ErrorHandler.ErrorType.INVALID_IDENTIFIER,
+                        kwLine, kwCol, startPos, position, errorMsg);
                 return null;
             }
         }
@@ -118,10 +743,12 @@ public class ManualScanner {
         int lastAcceptState = -1;
         int lastAcceptPos = -1;
 
-        while (position < input.length()) {
+        while (input.has(position)) {
 
             char c = peek();
-            int nextState = transition(state, c);
+            int nextState = tableDriven
+                    ? NEXT_STATE[state * NUM_CLASSES + classOf(c)]
+                    : transition(state, c);
 
             if (nextState == -1)
                 break;
@@ -129,21 +756,28 @@ public class ManualScanner {
             state = nextState;
             advance();
 
-            if (isAccepting(state)) {
+            // Cross the rest of a digit or identifier run without stepping the DFA
+            if (runs != null && STATE_RUN[state] >= 0) {
+                skipRun(STATE_RUN[state]);
+            }
+
+            if (tableDriven ? ACCEPTING[state] : isAccepting(state)) {
                 lastAcceptState = state;
                 lastAcceptPos = position;
             }
         }
 
         if (lastAcceptState == -1) {
-            // Build the lexeme that caused the error
-            String errorLexeme = input.substring(startPos, Math.min(position, input.length()));
             String errorMsg = "Mixed-case identifier not allowed";
+            ErrorHandler.ErrorType errorType = (state == 0 || state == 7)
+                    ? ErrorHandler.ErrorType.INVALID_CHARACTER
+                    : ErrorHandler.ErrorType.INVALID_IDENTIFIER;
             
             // Special error messages for string-related errors
             if (state == 5 || state == 11) {
+                errorType = ErrorHandler.ErrorType.MALFORMED_STRING;
                 // We were in a string and hit an error
-                if (position >= input.length()) {
+                if (!input.has(position)) {
                     errorMsg = "Unterminated string literal";
                 } else if (state == 11) {
                     errorMsg = "Invalid escape sequence in string";
@@ -153,43 +787,58 @@ public class ManualScanner {
             }
             
             // Log the error
-            errorHandler.add(errorLexeme, errorMsg, startLine, startColumn);
+            lexicalError(errorType, startLine, startColumn, startPos, position, errorMsg);
             
-            if (position < input.length()) {
+            // Always make progress; in panic mode only if nothing was consumed
+            // (a broken string must not swallow the newline that ended it)
+            if (input.has(position) && (!panicMode || position == startPos)) {
+                if (panicMode) {
+                    appendSpanText(peek());
+                }
                 advance();
             }
             return null;
         }
 
-        String lexeme = input.substring(startPos, lastAcceptPos);
-        position = lastAcceptPos;
+        moveTo(lastAcceptPos);
 
         // Check if identifier is followed by another uppercase letter (which would form mixed-case)
-        if ((lastAcceptState == 9 || lastAcceptState == 10) && position < input.length()) {
+        if ((lastAcceptState == 9 || lastAcceptState == 10) && input.has(position)) {
             char nextChar = peek();
             if (isUpperCase(nextChar)) {
                 // Identifier followed directly by another uppercase letter is an error
                 // Build the full problematic lexeme
                 int errorStart = startPos;
                 int errorEnd = position;
-                while (errorEnd < input.length() && 
+                while (input.has(errorEnd) && 
                        (isUpperCase(input.charAt(errorEnd)) || 
                         isLowerCase(input.charAt(errorEnd)) || 
                         isDigit(input.charAt(errorEnd)) || 
                         input.charAt(errorEnd) == '_')) {
                     errorEnd++;
                 }
-                String fullLexeme = input.substring(errorStart, errorEnd);
                 String errorMsg = "Mixed-case identifier not allowed";
-                errorHandler.add(fullLexeme, errorMsg, startLine, startColumn);
-                position = errorEnd;
+                lexicalError(ErrorHandler.ErrorType.INVALID_IDENTIFIER,
+                        startLine, startColumn, errorStart, errorEnd, errorMsg);
+                moveTo(errorEnd);
                 return null;
             }
         }
-        return createToken(lastAcceptState, lexeme, startLine, startColumn);
+        setToken(startPos, lastAcceptPos, startLine, startColumn);
+        if (tableDriven) {
+            return createTableToken(lastAcceptState, startPos, lastAcceptPos, startLine, startColumn);
+        }
+        return createToken(lastAcceptState, startPos, lastAcceptPos, startLine, startColumn);
     }
 
-    private int transition(int state, char c) {
+    private void setToken(int start, int end, int line, int column) {
+        tokenStart = start;
+        tokenEnd = end;
+        tokenLine = line;
+        tokenColumn = column;
+    }
+
+    private static int transition(int state, char c) {
 
         switch (state) {
 
@@ -300,28 +949,58 @@ public class ManualScanner {
         return -1;
     }
 
+    // Map a character to its column in NEXT_STATE
+    private static int classOf(char c) {
+        return c < 128 ? ASCII_CLASS[c] : classify(c);
+    }
+
+    private static int classify(char c) {
+        switch (c) {
+            case '+': case '-': return CC_SIGN;
+            case '"':           return CC_QUOTE;
+            case '\\':          return CC_BACKSLASH;
+            case '\n':          return CC_NEWLINE;
+            case '.':           return CC_DOT;
+            case '_':           return CC_UNDERSCORE;
+            case 'e':           return CC_LOWER_E;
+            case 'E':           return CC_UPPER_E;
+            case 'a':           return CC_A;
+            case 'f':           return CC_F;
+            case 'l':           return CC_L;
+            case 'n':           return CC_N;
+            case 'r':           return CC_R;
+            case 's':           return CC_S;
+            case 't':           return CC_T;
+            case 'u':           return CC_U;
+        }
+        if (isDigit(c)) return CC_DIGIT;
+        if (isUpperCase(c)) return CC_UPPER;
+        if (isLowerCase(c)) return CC_LOWER;
+        return CC_OTHER;
+    }
+
     // Helper methods for character classification
-    private boolean isDigit(char c) {
+    private static boolean isDigit(char c) {
         return Character.isDigit(c);
     }
 
-    private boolean isSign(char c) {
+    private static boolean isSign(char c) {
         return c == '+' || c == '-';
     }
 
-    private boolean isUpperCase(char c) {
+    private static boolean isUpperCase(char c) {
         return Character.isUpperCase(c);
     }
 
-    private boolean isLowerCase(char c) {
+    private static boolean isLowerCase(char c) {
         return Character.isLowerCase(c);
     }
 
-    private boolean isExponent(char c) {
+    private static boolean isExponent(char c) {
         return c == 'e' || c == 'E';
     }
 
-    private boolean isAccepting(int state) {
+    private static boolean isAccepting(int state) {
         // Final states from the DFA (excluding whitespace and comment states):
         // state 1: "true" (BOOLEAN_LITERAL)
         // state 2: INTEGER_LITERAL (D or D+)
@@ -336,104 +1015,175 @@ public class ManualScanner {
                 || state == 25 || state == 27 || state == 28;
     }
 
-    private Token createToken(int state, String lexeme,
-                              int line, int column) {
+    // Validate the accepted range [start, end) and return its token type, or null on error
+    private TokenType createToken(int state, int start, int end,
+                                  int line, int column) {
 
         switch (state) {
 
             case 1: // "true" (BOOLEAN_LITERAL)
-                return new Token(TokenType.BOOLEAN_LITERAL, lexeme, line, column);
+                return TokenType.BOOLEAN_LITERAL;
 
             case 2: // INTEGER_LITERAL
                 // Check for malformed integer (digit followed by letter like "12abc")
-                if (position < input.length() && isLowerCase(input.charAt(position))) {
+                if (input.has(position) && isLowerCase(input.charAt(position))) {
                     int errorEnd = position;
-                    while (errorEnd < input.length() && 
+                    while (input.has(errorEnd) && 
                            (isLowerCase(input.charAt(errorEnd)) || 
                             isDigit(input.charAt(errorEnd)))) {
                         errorEnd++;
                     }
-                    String malformedLexeme = input.substring(position - lexeme.length(), errorEnd);
                     String errorMsg = "Malformed integer: digit followed by letter";
-                    errorHandler.add(malformedLexeme, errorMsg, line, column);
+                    lexicalError(ErrorHandler.ErrorType.MALFORMED_INTEGER,
+                            line, column, start, errorEnd, errorMsg);
                     // Advance position to skip the malformed part
                     while (position < errorEnd) {
                         advance();
                     }
                     return null;
                 }
-                return new Token(TokenType.INTEGER_LITERAL, lexeme, line, column);
-
-            case 9: // IDENTIFIER (single uppercase letter only)
-                // Check identifier length (max 31 characters)
-                if (lexeme.length() > 31) {
-                    String errorMsg = "Identifier exceeds maximum length of 31 characters";
-                    errorHandler.add(lexeme, errorMsg, line, column);
+                if (!numbers.decodeInteger(input, start, end)) {
+                    lexicalError(ErrorHandler.ErrorType.MALFORMED_INTEGER,
+                            line, column, start, end, "Integer literal out of range");
                     return null;
                 }
-                
-                if (isKeyword(lexeme))
-                    return new Token(TokenType.KEYWORD, lexeme, line, column);
-
-                symbolTable.add(lexeme, "identifier", line);
-                return new Token(TokenType.IDENTIFIER, lexeme, line, column);
+                tokenValue = numbers.getBits();
+                return TokenType.INTEGER_LITERAL;
 
+            case 9:  // IDENTIFIER (single uppercase letter only)
             case 10: // IDENTIFIER (uppercase + lowercase/digit/underscore)
                 // Check identifier length (max 31 characters)
-                if (lexeme.length() > 31) {
+                if (end - start > 31) {
                     String errorMsg = "Identifier exceeds maximum length of 31 characters";
-                    errorHandler.add(lexeme, errorMsg, line, column);
+                    lexicalError(ErrorHandler.ErrorType.IDENTIFIER_TOO_LONG,
+                            line, column, start, end, errorMsg);
                     return null;
                 }
-                
-                if (isKeyword(lexeme))
-                    return new Token(TokenType.KEYWORD, lexeme, line, column);
 
-                symbolTable.add(lexeme, "identifier", line);
-                return new Token(TokenType.IDENTIFIER, lexeme, line, column);
+                String keyword = matchKeyword(start, end);
+                if (keyword != null) {
+                    tokenLexeme = keyword;
+                    return TokenType.KEYWORD;
+                }
+
+                if (lines != null) {
+                    line = lines.line(start);
+                    column = lines.column(start);
+                }
+
+                // Interned from the source range: repeats reuse the canonical name
+                tokenSymbolId = symbolTable.addIdentifier(input, start, end, line, column);
+                tokenLexeme = symbolTable.getName(tokenSymbolId);
+                return TokenType.IDENTIFIER;
 
             case 16: // STRING_LITERAL
-                return new Token(TokenType.STRING_LITERAL, lexeme, line, column);
+                return TokenType.STRING_LITERAL;
 
             case 25: // "false" (BOOLEAN_LITERAL)
-                return new Token(TokenType.BOOLEAN_LITERAL, lexeme, line, column);
+                return TokenType.BOOLEAN_LITERAL;
 
             case 27: // FLOAT_LITERAL with exponent
-                return new Token(TokenType.FLOAT_LITERAL, lexeme, line, column);
+                return decodeFloat(start, end, line, column);
 
             case 28: // FLOAT_LITERAL with decimal point
                 // Check decimal places (max 6 digits after decimal point)
-                int decimalPointIndex = lexeme.indexOf('.');
-                if (decimalPointIndex != -1) {
-                    // Find where the decimal digits end (before 'e' or 'E' if present)
-                    int expIndex = lexeme.indexOf('e');
-                    if (expIndex == -1) {
-                        expIndex = lexeme.indexOf('E');
+                int decimalPointIndex = -1;
+                int endOfDecimals = end;
+                for (int i = start; i < end; i++) {
+                    char c = input.charAt(i);
+                    if (c == '.' && decimalPointIndex == -1) {
+                        decimalPointIndex = i;
+                    } else if (isExponent(c)) {
+                        // Decimal digits end before 'e' or 'E' if present
+                        endOfDecimals = i;
+                        break;
                     }
-                    int endOfDecimals = (expIndex != -1) ? expIndex : lexeme.length();
+                }
+                if (decimalPointIndex != -1) {
                     int decimalDigits = endOfDecimals - decimalPointIndex - 1;
                     
                     if (decimalDigits > 6) {
                         String errorMsg = "Float literal exceeds maximum of 6 digits after decimal point";
-                        errorHandler.add(lexeme, errorMsg, line, column);
+                        lexicalError(ErrorHandler.ErrorType.MALFORMED_FLOAT,
+                                line, column, start, end, errorMsg);
                         return null;
                     }
                 }
-                return new Token(TokenType.FLOAT_LITERAL, lexeme, line, column);
+                return decodeFloat(start, end, line, column);
         }
 
         return null;
     }
 
-    private boolean isKeyword(String word) {
-        String[] keywords = {
-                "start", "finish", "loop", "condition",
-                "declare", "output", "input",
-                "function", "return", "break",
-                "continue", "else"
-        };
+    // Decode the FLOAT_LITERAL input[start, end) into tokenValue; null if it overflows
+    private TokenType decodeFloat(int start, int end, int line, int column) {
+
+        if (!numbers.decodeFloat(input, start, end)) {
+            lexicalError(ErrorHandler.ErrorType.MALFORMED_FLOAT,
+                    line, column, start, end, "Float literal out of range");
+            return null;
+        }
+        tokenValue = numbers.getBits();
+        return TokenType.FLOAT_LITERAL;
+    }
+
+    // Table-driven counterpart of createToken: plain states take their type straight
+    // from STATE_TOKEN_TYPE, states that need validation share createToken's checks
+    private TokenType createTableToken(int state, int start, int end,
+                                       int line, int column) {
+
+        if (STATE_CHECK[state] != CHECK_NONE) {
+            return createToken(state, start, end, line, column);
+        }
+        return STATE_TOKEN_TYPE[state];
+    }
 
-        return Arrays.asList(keywords).contains(word);
+    /*
+     * Keyword lookup on the source range [start, end), without building a
+     * String. Candidates are bucketed by (length, first letter), which is a
+     * perfect hash for the current keyword set; returns the canonical
+     * keyword String or null.
+     */
+    private String matchKeyword(int start, int end) {
+
+        int length = end - start;
+        if (length < MIN_KEYWORD_LENGTH || length > MAX_KEYWORD_LENGTH) {
+            return null;
+        }
+
+        char first = input.charAt(start);
+        if (first < 'a' || first > 'z') {
+            return null;
+        }
+
+        String[] candidates = KEYWORD_BUCKETS[length * 26 + (first - 'a')];
+        if (candidates == null) {
+            return null;
+        }
+
+        for (String keyword : candidates) {
+            int i = 1;
+            while (i < length && input.charAt(start + i) == keyword.charAt(i)) {
+                i++;
+            }
+            if (i == length) {
+                return keyword;
+            }
+        }
+        return null;
+    }
+
+    // Move past a run of one CharRuns set (never contains a '\n')
+    private void skipRun(int set) {
+        int end = input.runEnd(position, set, runs);
+        column += end - position;
+        position = end;
+    }
+
+    // Jump to target on the current line (back to the last accept, or past an error)
+    private void moveTo(int target) {
+        column += target - position;
+        position = target;
     }
 
     private char peek() {
@@ -441,6 +1191,10 @@ public class ManualScanner {
     }
 
     private void advance() {
+        if (lines != null) {
+            position++;
+            return;
+        }
         if (peek() == '\n') {
             line++;
             column = 1;
@@ -451,18 +1205,18 @@ public class ManualScanner {
     }
 
     public void printStatistics() {
-        System.out.println("Total Tokens: " + tokens.size());
+        System.out.println("Total Tokens: " + totalTokens);
         
         System.out.println("\n=== Token Type Counts ===");
         
         // Print counts for each token type
-        int keywordCount = statistics.getOrDefault(TokenType.KEYWORD, 0);
-        int identifierCount = statistics.getOrDefault(TokenType.IDENTIFIER, 0);
-        int integerCount = statistics.getOrDefault(TokenType.INTEGER_LITERAL, 0);
-        int floatCount = statistics.getOrDefault(TokenType.FLOAT_LITERAL, 0);
-        int stringCount = statistics.getOrDefault(TokenType.STRING_LITERAL, 0);
-        int booleanCount = statistics.getOrDefault(TokenType.BOOLEAN_LITERAL, 0);
-        int commentCount = statistics.getOrDefault(TokenType.SINGLE_LINE_COMMENT, 0);
+        int keywordCount = statistics[TokenType.KEYWORD.ordinal()];
+        int identifierCount = statistics[TokenType.IDENTIFIER.ordinal()];
+        int integerCount = statistics[TokenType.INTEGER_LITERAL.ordinal()];
+        int floatCount = statistics[TokenType.FLOAT_LITERAL.ordinal()];
+        int stringCount = statistics[TokenType.STRING_LITERAL.ordinal()];
+        int booleanCount = statistics[TokenType.BOOLEAN_LITERAL.ordinal()];
+        int commentCount = statistics[TokenType.SINGLE_LINE_COMMENT.ordinal()];
         
         if (keywordCount > 0) System.out.println("KEYWORD: " + keywordCount);
         if (identifierCount > 0) System.out.println("IDENTIFIER: " + identifierCount);
@@ -477,11 +1231,34 @@ public class ManualScanner {
         System.out.println("Comments Skipped: " + commentsSkipped);
     }
 
+    // Comments skipped so far (the count Lexer.getCommentCount() gives for Yylex)
+    public int getCommentCount() {
+        return commentsSkipped;
+    }
+
+    // Per-type counts of the tokens produced so far
+    public Map<TokenType, Integer> getStatistics() {
+        Map<TokenType, Integer> counts = new EnumMap<>(TokenType.class);
+        for (TokenType type : TokenType.values()) {
+            counts.put(type, statistics[type.ordinal()]);
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+
+    public int getTotalTokens() {
+        return totalTokens;
+    }
+
     // Expose symbol table so callers (e.g. Main) can inspect what the scanner recorded
-    public SymbolTable getSymbolTable() {
+    public SymbolStore getSymbolTable() {
         return symbolTable;
     }
 
+    // Record identifiers into a table shared with other scanners (e.g. a ConcurrentSymbolTable view)
+    public void setSymbolTable(SymbolStore symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
     // Expose error handler so callers can inspect lexical errors
     public ErrorHandler getErrorHandler() {
         return errorHandler;
@@ -0,0 +1,122 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Reader over a memory-mapped source file, so Yylex (or ManualScanner's
+ * Reader constructor) can scan a mapped file.
+ *
+ * ASCII bytes are widened straight into the caller's char[]. The first
+ * non-ASCII byte switches the reader over to a UTF-8 decoder for the rest
+ * of the file, so the characters produced are always the same as reading
+ * the file through an InputStreamReader.
+ */
+public class MappedFileReader extends Reader {
+
+    private final ByteBuffer bytes;
+    private CharsetDecoder decoder;     // null while the input is still ASCII
+    private boolean flushed = false;
+
+    public MappedFileReader(Path file) throws IOException {
+        this(mapFile(file));
+    }
+
+    public MappedFileReader(ByteBuffer bytes) {
+        this.bytes = bytes.duplicate();
+    }
+
+    /* Map a whole file read-only; the mapping stays valid after the channel is closed */
+    public static ByteBuffer mapFile(Path file) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map: " + file);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /* True if no byte in the buffer has its high bit set */
+    public static boolean isAscii(ByteBuffer bytes) {
+
+        int limit = bytes.limit();
+        int i = 0;
+
+        // Eight bytes at a time, then the tail
+        for (; i + 8 <= limit; i += 8) {
+            if ((bytes.getLong(i) & 0x8080808080808080L) != 0) {
+                return false;
+            }
+        }
+        for (; i < limit; i++) {
+            if (bytes.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+
+        if (length == 0) {
+            return 0;
+        }
+
+        if (decoder == null) {
+            int pos = bytes.position();
+            int end = Math.min(bytes.limit(), pos + length);
+            int n = 0;
+            while (pos < end) {
+                byte b = bytes.get(pos);
+                if (b < 0) {
+                    decoder = StandardCharsets.UTF_8.newDecoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                    break;
+                }
+                buffer[offset + n++] = (char) b;
+                pos++;
+            }
+            bytes.position(pos);
+            if (n > 0 || decoder == null) {
+                return n > 0 ? n : -1;
+            }
+        }
+
+        return decode(buffer, offset, length);
+    }
+
+    private int decode(char[] buffer, int offset, int length) throws IOException {
+
+        if (flushed) {
+            return -1;
+        }
+
+        CharBuffer out = CharBuffer.wrap(buffer, offset, length);
+        CoderResult result = decoder.decode(bytes, out, true);
+        if (!bytes.hasRemaining() && !result.isOverflow()) {
+            result = decoder.flush(out);
+            flushed = !result.isOverflow();
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+
+        int n = out.position() - offset;
+        return (n == 0 && flushed) ? -1 : n;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,306 @@
+import java.math.BigInteger;
+
+/*
+ * Decodes INTEGER_LITERAL and FLOAT_LITERAL lexemes straight from the
+ * source range while the scanner still has it, so later phases get the
+ * long or double from the token instead of calling Long.parseLong or
+ * Double.parseDouble on a fresh String.
+ *
+ * Integers, [+-]?[0-9]+, are accumulated as negative numbers so that
+ * Long.MIN_VALUE fits; anything outside the long range fails. Digits may
+ * be any Unicode decimal digit, as ManualScanner's Character.isDigit
+ * accepts them.
+ *
+ * Floats, [+-]?[0-9]+(.[0-9]+)?([eE][+-]?[0-9]+)?, become w * 10^q with
+ * up to 19 significant digits in w and are converted with correct
+ * rounding in three steps:
+ *
+ *   1. Clinger's fast path: w < 2^53 and |q| <= 22, so one IEEE multiply
+ *      or divide of two exact doubles is the correctly rounded result.
+ *   2. Eisel-Lemire: w times a 128-bit approximation of 5^q, keeping the
+ *      top 54 bits. The table and the round-to-even test follow fast_float,
+ *      whose approximation is proven to be sufficient (Mushtak and Lemire,
+ *      "Fast Number Parsing Without Fallback").
+ *   3. Double.parseDouble on the range, the only step that allocates: more
+ *      than 19 significant digits, or a subnormal result.
+ *
+ * A float that rounds to infinity fails. One decoder belongs to one
+ * scanner; after a call that returned true the value is in getLong() or
+ * getDouble(), and getBits() holds it in the form Token stores.
+ */
+public final class NumberDecoder {
+
+    private static final int MIN_POWER = -342;     // below this, w * 10^q rounds to 0
+    private static final int MAX_POWER = 308;      // above this, it rounds to infinity
+
+    private static final double[] EXACT_POWERS = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // 5^q scaled into [2^127, 2^128), as high and low 64-bit halves, for q in [MIN_POWER, MAX_POWER]
+    private static final long[] POW5_HIGH = new long[MAX_POWER - MIN_POWER + 1];
+    private static final long[] POW5_LOW = new long[MAX_POWER - MIN_POWER + 1];
+
+    static {
+        BigInteger five = BigInteger.valueOf(5);
+        BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+        for (int q = MIN_POWER; q <= MAX_POWER; q++) {
+            BigInteger c;
+            if (q < 0) {
+                // Reciprocal 2^b / 5^-q, rounded up, truncated to 128 bits
+                BigInteger power = five.pow(-q);
+                int z = power.bitLength();
+                int b = (q >= -27) ? z + 127 : 2 * z + 128;
+                c = BigInteger.ONE.shiftLeft(b).divide(power).add(BigInteger.ONE);
+                if (c.bitLength() > 128) {
+                    c = c.shiftRight(c.bitLength() - 128);
+                }
+            } else {
+                // 5^q with its top bit moved to bit 127, truncated
+                c = five.pow(q);
+                c = (c.bitLength() < 128) ? c.shiftLeft(128 - c.bitLength()) : c.shiftRight(c.bitLength() - 128);
+            }
+            POW5_HIGH[q - MIN_POWER] = c.shiftRight(64).longValue();
+            POW5_LOW[q - MIN_POWER] = c.and(mask).longValue();
+        }
+    }
+
+    private long bits;
+
+    // Lets a char[] range (Yylex's buffer) go through the CharSequence code without a copy
+    private final CharArrayView view = new CharArrayView();
+
+    public long getLong() {
+        return bits;
+    }
+
+    public double getDouble() {
+        return Double.longBitsToDouble(bits);
+    }
+
+    /* The value as Token keeps it: the long itself, or the double's bits */
+    public long getBits() {
+        return bits;
+    }
+
+    /* ---------- Integers ---------- */
+
+    /* Decode text[start, end); false if it does not fit in a long */
+    public boolean decodeInteger(CharSequence text, int start, int end) {
+
+        boolean negative = false;
+        char first = text.charAt(start);
+        if (first == '+' || first == '-') {
+            negative = first == '-';
+            start++;
+        }
+
+        long value = 0;
+        for (int pos = start; pos < end; pos++) {
+            int digit = digit(text.charAt(pos));
+            if (value < Long.MIN_VALUE / 10) {
+                return false;
+            }
+            value *= 10;
+            if (value < Long.MIN_VALUE + digit) {
+                return false;
+            }
+            value -= digit;
+        }
+
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                return false;
+            }
+            value = -value;
+        }
+        bits = value;
+        return true;
+    }
+
+    public boolean decodeInteger(char[] chars, int start, int end) {
+        return decodeInteger(view.of(chars), start, end);
+    }
+
+    /* ---------- Floats ---------- */
+
+    /* Decode text[start, end); false if it rounds to infinity */
+    public boolean decodeFloat(CharSequence text, int start, int end) {
+
+        int pos = start;
+        boolean negative = false;
+        char c = text.charAt(pos);
+        if (c == '+' || c == '-') {
+            negative = c == '-';
+            pos++;
+        }
+
+        // Significant digits into w (unsigned: 19 digits can pass 2^63); q counts the decimal places
+        long w = 0;
+        int digits = 0;
+        int q = 0;
+        boolean fraction = false;
+
+        for (; pos < end; pos++) {
+            c = text.charAt(pos);
+            if (c == '.') {
+                fraction = true;
+                continue;
+            }
+            if (c == 'e' || c == 'E') {
+                break;
+            }
+            if (digits > 0 || digit(c) != 0) {
+                if (++digits > 19) {
+                    return slowFloat(text, start, end);
+                }
+                w = w * 10 + digit(c);
+            }
+            if (fraction) {
+                q--;
+            }
+        }
+
+        if (pos < end) {
+            // Exponent; anything this large is out of range either way
+            pos++;
+            boolean negativeExponent = false;
+            c = text.charAt(pos);
+            if (c == '+' || c == '-') {
+                negativeExponent = c == '-';
+                pos++;
+            }
+            int exponent = 0;
+            for (; pos < end; pos++) {
+                if (exponent < 100000) {
+                    exponent = exponent * 10 + digit(text.charAt(pos));
+                }
+            }
+            q += negativeExponent ? -exponent : exponent;
+        }
+
+        long sign = negative ? Long.MIN_VALUE : 0;
+
+        if (w == 0 || q < MIN_POWER) {
+            bits = sign;
+            return true;
+        }
+        if (q > MAX_POWER) {
+            return false;
+        }
+
+        // 1. Clinger
+        if (q >= -22 && q <= 22 && Long.compareUnsigned(w, 1L << 53) <= 0) {
+            double value = (q < 0) ? w / EXACT_POWERS[-q] : w * EXACT_POWERS[q];
+            bits = Double.doubleToRawLongBits(value) | sign;
+            return true;
+        }
+
+        // 2. Eisel-Lemire
+        int lz = Long.numberOfLeadingZeros(w);
+        w <<= lz;
+
+        int index = q - MIN_POWER;
+        long high = unsignedMultiplyHigh(w, POW5_HIGH[index]);
+        long low = w * POW5_HIGH[index];
+        if ((high & 0x1FF) == 0x1FF) {
+            // The next 64 bits of 5^q could carry into the bits we keep
+            long next = unsignedMultiplyHigh(w, POW5_LOW[index]);
+            low += next;
+            if (Long.compareUnsigned(next, low) > 0) {
+                high++;
+            }
+        }
+
+        int upperBit = (int) (high >>> 63);
+        int shift = upperBit + 9;
+        long mantissa = high >>> shift;
+        int power2 = ((((152170 + 65536) * q) >> 16) + 63) + upperBit - lz + 1023;
+
+        if (power2 <= 0) {
+            // Subnormal
+            return slowFloat(text, start, end);
+        }
+
+        // Exactly halfway between two doubles: round to even instead of up
+        if (Long.compareUnsigned(low, 1) <= 0 && q >= -4 && q <= 23
+                && (mantissa & 3) == 1 && (mantissa << shift) == high) {
+            mantissa &= ~1L;
+        }
+
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        if (mantissa >= (1L << 53)) {
+            mantissa = 1L << 52;
+            power2++;
+        }
+        mantissa &= ~(1L << 52);
+
+        if (power2 >= 0x7FF) {
+            return false;
+        }
+        bits = mantissa | ((long) power2 << 52) | sign;
+        return true;
+    }
+
+    public boolean decodeFloat(char[] chars, int start, int end) {
+        return decodeFloat(view.of(chars), start, end);
+    }
+
+    // 3. Correctly rounded by the JDK, at the cost of a String (with ASCII digits, as parseDouble wants)
+    private boolean slowFloat(CharSequence text, int start, int end) {
+
+        StringBuilder ascii = new StringBuilder(end - start);
+        for (int pos = start; pos < end; pos++) {
+            char c = text.charAt(pos);
+            ascii.append(Character.isDigit(c) ? (char) ('0' + digit(c)) : c);
+        }
+        double value = Double.parseDouble(ascii.toString());
+        bits = Double.doubleToRawLongBits(value);
+        return !Double.isInfinite(value);
+    }
+
+    private static int digit(char c) {
+        int digit = c - '0';
+        return (digit >= 0 && digit <= 9) ? digit : Character.digit(c, 10);
+    }
+
+    // High 64 bits of the unsigned 128-bit product
+    private static long unsignedMultiplyHigh(long a, long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+
+    /* ---------- char[] access ---------- */
+
+    private static final class CharArrayView implements CharSequence {
+
+        private char[] chars;
+
+        CharSequence of(char[] chars) {
+            this.chars = chars;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return chars.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars);
+        }
+    }
+}
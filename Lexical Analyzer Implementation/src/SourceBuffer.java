@@ -0,0 +1,434 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/*
+ * Character source for ManualScanner.
+ *
+ * Positions are absolute offsets from the start of the program. A scanner
+ * only ever looks back as far as the start of the token it is working on,
+ * so it calls release() at each token boundary and the buffer is free to
+ * drop everything before that point.
+ *
+ * As a CharSequence it can be handed to code that works on character
+ * ranges (e.g. IdentifierPool) with the same absolute positions.
+ */
+public abstract class SourceBuffer implements CharSequence {
+
+    /* Is there a character at pos? (may pull more input) */
+    public abstract boolean has(int pos);
+
+    /* Character at pos; has(pos) must have returned true */
+    public abstract char charAt(int pos);
+
+    /* Position just past the last character available so far */
+    public abstract int length();
+
+    /* Text between two positions that have not been released */
+    public abstract String substring(int start, int end);
+
+    /*
+     * Position of the first '\n' or '\r' at or after pos, or the end of
+     * input. Used to skip comments, so the characters passed over are
+     * released.
+     */
+    public int lineEnd(int pos) {
+        while (has(pos)) {
+            char c = charAt(pos);
+            if (c == '\n' || c == '\r') {
+                break;
+            }
+            pos++;
+        }
+        release(pos);
+        return pos;
+    }
+
+    /* Position of the first character at or after pos outside a CharRuns set, or the end of input */
+    public int runEnd(int pos, int set, CharRuns runs) {
+        while (has(pos) && CharRuns.contains(set, charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /* Same as runEnd() for text that is not kept (spaces, comment bodies): what it passes is released */
+    public int skipRun(int pos, int set, CharRuns runs) {
+        int end = runEnd(pos, set, runs);
+        release(end);
+        return end;
+    }
+
+    /* Characters before pos will not be asked for again */
+    public void release(int pos) {
+    }
+
+    /* Text between two unreleased positions, without copying where the source allows it */
+    public CharSequence subSequence(int start, int end) {
+        return substring(start, end);
+    }
+
+    /* The whole program if it stays addressable by position, otherwise null */
+    public CharSequence text() {
+        return null;
+    }
+
+    /* Same text, but has() reports end of input at end (only for sources with text()) */
+    public SourceBuffer limit(int end) {
+        throw new UnsupportedOperationException("Source cannot be split");
+    }
+
+    public static SourceBuffer of(String input) {
+        return new OfString(input);
+    }
+
+    public static SourceBuffer of(Reader reader) {
+        return new OfReader(reader);
+    }
+
+    /*
+     * Memory-map a source file. Pure ASCII files are lexed straight off the
+     * mapped bytes; anything else goes through MappedFileReader, which
+     * decodes the same mapping as UTF-8 (a multi-byte character changes
+     * both classification and column numbers, so it cannot be lexed as
+     * raw bytes).
+     */
+    public static SourceBuffer map(Path file) throws IOException {
+        return map(MappedFileReader.mapFile(file));
+    }
+
+    /* Same, over bytes the caller already mapped (e.g. to hash the exact bytes it lexes) */
+    public static SourceBuffer map(ByteBuffer bytes) {
+
+        if (MappedFileReader.isAscii(bytes)) {
+            return new OfMappedAscii(bytes);
+        }
+        return new OfReader(new MappedFileReader(bytes));
+    }
+
+    /* ---------- Whole program held in a String ---------- */
+
+    public static class OfString extends SourceBuffer {
+
+        private final String input;
+        private final int end;
+
+        // Blocks of the String are copied here for runEnd (a String's own array is not reachable)
+        private char[] scratch;
+
+        public OfString(String input) {
+            this(input, input.length());
+        }
+
+        private OfString(String input, int end) {
+            this.input = input;
+            this.end = end;
+        }
+
+        @Override
+        public boolean has(int pos) {
+            return pos < end;
+        }
+
+        @Override
+        public char charAt(int pos) {
+            return input.charAt(pos);
+        }
+
+        @Override
+        public int length() {
+            return end;
+        }
+
+        @Override
+        public int lineEnd(int pos) {
+            while (pos < end) {
+                char c = input.charAt(pos);
+                if (c == '\n' || c == '\r') {
+                    break;
+                }
+                pos++;
+            }
+            return pos;
+        }
+
+        /*
+         * Most runs are short, so the first chars are tested in place; a run
+         * that goes on is copied out in growing blocks for runs to search.
+         */
+        @Override
+        public int runEnd(int pos, int set, CharRuns runs) {
+
+            int direct = Math.min(pos + 16, end);
+            while (pos < direct) {
+                if (!CharRuns.contains(set, input.charAt(pos))) {
+                    return pos;
+                }
+                pos++;
+            }
+
+            if (scratch == null) {
+                scratch = new char[1024];
+            }
+            int block = 64;
+            while (pos < end) {
+                int count = Math.min(block, end - pos);
+                input.getChars(pos, pos + count, scratch, 0);
+                int stop = runs.runEnd(scratch, 0, count, set);
+                pos += stop;
+                if (stop < count) {
+                    break;
+                }
+                block = Math.min(block * 2, scratch.length);
+            }
+            return pos;
+        }
+
+        @Override
+        public String substring(int start, int end) {
+            return input.substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return input.substring(0, end);
+        }
+
+        @Override
+        public CharSequence text() {
+            return input;
+        }
+
+        @Override
+        public SourceBuffer limit(int end) {
+            return new OfString(input, end);
+        }
+    }
+
+    /* ---------- Refillable buffer over a Reader ---------- */
+
+    /*
+     * Works like Yylex.zzRefill: when the reader needs more room the
+     * unreleased tail is shifted to the front of the buffer, and the buffer
+     * only grows when a single token does not fit. lineEnd() and skipRun()
+     * release as they go, so long comments and runs of spaces do not count.
+     * Memory therefore depends on the longest token, not on the size of the
+     * file or the longest line.
+     */
+    public static class OfReader extends SourceBuffer {
+
+        private static final int BUFFER_SIZE = 16384;
+
+        private final Reader reader;
+        private char[] buffer = new char[BUFFER_SIZE];
+
+        private int bufferStart = 0;    // absolute position of buffer[0]
+        private int bufferEnd = 0;      // number of valid chars in buffer
+        private int released = 0;       // absolute position before which chars may be dropped
+        private boolean atEOF = false;
+
+        public OfReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean has(int pos) {
+            while (pos >= bufferStart + bufferEnd) {
+                if (atEOF || !refill()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public char charAt(int pos) {
+            return buffer[pos - bufferStart];
+        }
+
+        @Override
+        public int length() {
+            return bufferStart + bufferEnd;
+        }
+
+        /* Searches the buffer directly, refilling (and releasing) as needed */
+        @Override
+        public int lineEnd(int pos) {
+            while (has(pos)) {
+                int limit = bufferStart + bufferEnd;
+                while (pos < limit) {
+                    char c = buffer[pos - bufferStart];
+                    if (c == '\n' || c == '\r') {
+                        release(pos);
+                        return pos;
+                    }
+                    pos++;
+                }
+                release(pos);
+            }
+            return pos;
+        }
+
+        /* Runs over the buffer directly, refilling as needed */
+        @Override
+        public int runEnd(int pos, int set, CharRuns runs) {
+            return runEnd(pos, set, runs, false);
+        }
+
+        @Override
+        public int skipRun(int pos, int set, CharRuns runs) {
+            return runEnd(pos, set, runs, true);
+        }
+
+        private int runEnd(int pos, int set, CharRuns runs, boolean release) {
+            while (has(pos)) {
+                int limit = bufferEnd;
+                int stop = runs.runEnd(buffer, pos - bufferStart, limit, set);
+                pos = bufferStart + stop;
+                if (release) {
+                    release(pos);
+                }
+                if (stop < limit) {
+                    break;
+                }
+            }
+            return pos;
+        }
+
+        // Size of the buffer, which only a long token makes grow
+        int capacity() {
+            return buffer.length;
+        }
+
+        @Override
+        public String substring(int start, int end) {
+            return new String(buffer, start - bufferStart, end - start);
+        }
+
+        /* Only the characters still held in the buffer */
+        @Override
+        public String toString() {
+            return new String(buffer, 0, bufferEnd);
+        }
+
+        /* Only valid until the next refill */
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return CharBuffer.wrap(buffer, start - bufferStart, end - start);
+        }
+
+        @Override
+        public void release(int pos) {
+            if (pos > released) {
+                released = pos;
+            }
+        }
+
+        /* Read more characters; returns false once the reader is exhausted */
+        private boolean refill() {
+
+            /* first: make room (if you can) */
+            int keep = released - bufferStart;
+            if (keep > 0) {
+                System.arraycopy(buffer, keep, buffer, 0, bufferEnd - keep);
+                bufferEnd -= keep;
+                bufferStart = released;
+            }
+
+            /* is the buffer big enough? */
+            if (bufferEnd == buffer.length) {
+                char[] newBuffer = new char[buffer.length * 2];
+                System.arraycopy(buffer, 0, newBuffer, 0, bufferEnd);
+                buffer = newBuffer;
+            }
+
+            /* fill the buffer with new input */
+            try {
+                int numRead = reader.read(buffer, bufferEnd, buffer.length - bufferEnd);
+                if (numRead < 0) {
+                    atEOF = true;
+                    reader.close();
+                    return false;
+                }
+                bufferEnd += numRead;
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /* ---------- Memory-mapped ASCII file ---------- */
+
+    /* One byte is one character; nothing is decoded or copied until a lexeme is asked for */
+    public static class OfMappedAscii extends SourceBuffer {
+
+        private final ByteBuffer bytes;
+        private final int end;
+
+        public OfMappedAscii(ByteBuffer bytes) {
+            this(bytes, bytes.limit());
+        }
+
+        private OfMappedAscii(ByteBuffer bytes, int end) {
+            this.bytes = bytes;
+            this.end = end;
+        }
+
+        @Override
+        public boolean has(int pos) {
+            return pos < end;
+        }
+
+        @Override
+        public char charAt(int pos) {
+            return (char) bytes.get(pos);
+        }
+
+        @Override
+        public int lineEnd(int pos) {
+            while (pos < end) {
+                byte b = bytes.get(pos);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                pos++;
+            }
+            return pos;
+        }
+
+        @Override
+        public int runEnd(int pos, int set, CharRuns runs) {
+            return runs.runEnd(bytes, pos, end, set);
+        }
+
+        @Override
+        public String substring(int start, int end) {
+            byte[] lexeme = new byte[end - start];
+            bytes.get(start, lexeme);
+            return new String(lexeme, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public CharSequence text() {
+            return this;
+        }
+
+        @Override
+        public SourceBuffer limit(int end) {
+            return new OfMappedAscii(bytes, end);
+        }
+
+        @Override
+        public int length() {
+            return end;
+        }
+
+        @Override
+        public String toString() {
+            return substring(0, end);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+import java.io.Reader;
+
+/*
+ * Table-driven lexer over LexerTables, a drop-in for Yylex (see Lexer).
+ *
+ * Matching follows JFlex: the longest match wins, the earlier rule wins a
+ * tie, and the DFA runs on code points. Lines and columns are counted the
+ * way Yylex counts them (\r\n is one line break; \r, \n, \u000B, \u000C,
+ * \u0085, \u2028 and \u2029 each end a line on their own), so tokens,
+ * positions and errors are the same as the generated Yylex produces from
+ * the same specification.
+ *
+ * With lazy positions (String or mapped input only) the per-character line
+ * counting is skipped: tokens keep their start offset and a LineIndex of
+ * the whole input answers getLine()/getColumn() for the tokens and errors
+ * that need them.
+ */
+public class SpecLexer implements Lexer {
+
+    private final LexerTables tables;
+    private final char[] bmpClass;
+    private final int[] next;
+    private final int[] accept;
+    private final int classes;
+
+    private final SourceBuffer input;
+    private int position = 0;
+
+    // Position of the next token, 0-based like yyline and yycolumn
+    private int line = 0;
+    private int column = 0;
+
+    private int commentCount = 0;
+
+    // The token found by the last advance(): input[tokenStart, tokenEnd)
+    private TokenType tokenType;
+    private int tokenStart;
+    private int tokenEnd;
+    private int tokenLine;          // 0 until looked up in lines
+    private int tokenColumn;
+    private String errorLexeme;     // ERROR tokens only (already built for the error report)
+
+    private LineIndex lines;        // lazy positions; null means counted per character
+
+    private SymbolStore symbolTable;
+    private ErrorHandler errorHandler;
+
+    // Number literals are decoded as Scanner.flex's createNumberToken does
+    private final NumberDecoder numbers = new NumberDecoder();
+
+    public SpecLexer(LexerTables tables, SourceBuffer input) {
+
+        this.tables = tables;
+        this.bmpClass = tables.bmpClasses();
+        this.next = tables.transitions();
+        this.accept = tables.accepting();
+        this.classes = tables.getClassCount();
+        this.input = input;
+    }
+
+    public SpecLexer(LexerTables tables, Reader reader) {
+        this(tables, SourceBuffer.of(reader));
+    }
+
+    public SpecLexer(LexerTables tables, String program) {
+        this(tables, SourceBuffer.of(program));
+    }
+
+    public void setLazyPositions(boolean lazy) {
+
+        if (!lazy) {
+            lines = null;
+            return;
+        }
+        CharSequence text = input.text();
+        if (text == null) {
+            throw new IllegalStateException("Lazy positions need String or mapped input");
+        }
+        lines = LineIndex.ofUnicode(text);
+    }
+
+    public boolean isLazyPositions() {
+        return lines != null;
+    }
+
+    /* The whole input, or null if it is read as a stream (token offsets index it) */
+    public CharSequence getText() {
+        return input.text();
+    }
+
+    @Override
+    public Token yylex() {
+
+        TokenType type = advance();
+        switch (type) {
+            case EOF:
+                return new Token(TokenType.EOF, "EOF", getTokenLine(), getTokenColumn());
+            case ERROR:
+                return new Token(TokenType.ERROR, errorLexeme, tokenLine, tokenColumn);
+            default:
+                Token token = token(type, tokenStart, tokenEnd, tokenLine, tokenColumn);
+                if (type == TokenType.INTEGER_LITERAL || type == TokenType.FLOAT_LITERAL) {
+                    token.setValue(numbers.getBits());
+                }
+                return token;
+        }
+    }
+
+    /*
+     * Move to the next token without building a Token object and return its
+     * type (EOF at the end, ERROR after reporting an error, as yylex()
+     * does). Its offsets, position and value are read with the getters.
+     */
+    public TokenType advance() {
+
+        while (true) {
+
+            if (!input.has(position)) {
+                tokenStart = position;
+                tokenEnd = position;
+                tokenLine = (lines == null) ? line + 1 : 0;
+                tokenColumn = column + 1;
+                return tokenType = TokenType.EOF;
+            }
+            input.release(position);
+
+            // Longest match from position
+            int state = 0;
+            int rule = -1;
+            int end = position;
+            int pos = position;
+
+            while (input.has(pos)) {
+
+                int c = input.charAt(pos);
+                int width = 1;
+                if (Character.isHighSurrogate((char) c) && input.has(pos + 1)
+                        && Character.isLowSurrogate(input.charAt(pos + 1))) {
+                    c = Character.toCodePoint((char) c, input.charAt(pos + 1));
+                    width = 2;
+                }
+
+                int cls = (c < bmpClass.length) ? bmpClass[c] : tables.classOf(c);
+                state = next[state * classes + cls];
+                if (state < 0) {
+                    break;
+                }
+                pos += width;
+
+                if (accept[state] >= 0) {
+                    rule = accept[state];
+                    end = pos;
+                }
+            }
+
+            if (rule < 0) {
+                // What Yylex throws when no rule matches
+                throw new Error("Error: could not match input");
+            }
+
+            int start = position;
+            int tokenLine = 0;
+            int tokenColumn = 0;
+            if (lines == null) {
+                tokenLine = line + 1;
+                tokenColumn = column + 1;
+                countLines(start, end);
+            }
+            position = end;
+
+            LexerSpec.Action action = tables.getAction(rule);
+            switch (action.getKind()) {
+
+                case TOKEN: {
+                    TokenType type = action.getType();
+                    if (type == TokenType.INTEGER_LITERAL
+                            && !numbers.decodeInteger(input, start, end)) {
+                        return error(ErrorHandler.ErrorType.MALFORMED_INTEGER, "Integer literal out of range",
+                                start, end, tokenLine, tokenColumn);
+                    }
+                    if (type == TokenType.FLOAT_LITERAL
+                            && !numbers.decodeFloat(input, start, end)) {
+                        return error(ErrorHandler.ErrorType.MALFORMED_FLOAT, "Float literal out of range",
+                                start, end, tokenLine, tokenColumn);
+                    }
+                    this.tokenStart = start;
+                    this.tokenEnd = end;
+                    this.tokenLine = tokenLine;
+                    this.tokenColumn = tokenColumn;
+                    return this.tokenType = type;
+                }
+
+                case ERROR:
+                    return error(action.getError(), action.getReason(), start, end, tokenLine, tokenColumn);
+
+                case COUNT:
+                    commentCount++;
+                    break;
+
+                case SKIP:
+                    break;
+            }
+        }
+    }
+
+    /* Type of the token found by the last advance() */
+    public TokenType getTokenType() {
+        return tokenType;
+    }
+
+    /* Offset of the token's first character in getText() */
+    public int getTokenStart() {
+        return tokenStart;
+    }
+
+    public int getTokenEnd() {
+        return tokenEnd;
+    }
+
+    public int getTokenLine() {
+        resolveTokenPosition();
+        return tokenLine;
+    }
+
+    public int getTokenColumn() {
+        resolveTokenPosition();
+        return tokenColumn;
+    }
+
+    /* Decoded value of an INTEGER_LITERAL or FLOAT_LITERAL token, as Token.getLongValue() */
+    public long getTokenValue() {
+        return numbers.getBits();
+    }
+
+    /* The token's text; an ERROR token's was built for the report anyway */
+    public String getTokenLexeme() {
+        return (tokenType == TokenType.ERROR) ? errorLexeme : input.substring(tokenStart, tokenEnd);
+    }
+
+    private void resolveTokenPosition() {
+        if (tokenLine == 0 && lines != null) {
+            tokenLine = lines.line(tokenStart);
+            tokenColumn = lines.column(tokenStart);
+        }
+    }
+
+    // Report input[start, end) and make it the current (ERROR) token
+    private TokenType error(ErrorHandler.ErrorType type, String reason,
+                            int start, int end, int tokenLine, int tokenColumn) {
+
+        String lexeme = input.substring(start, end);
+        if (lines != null) {
+            tokenLine = lines.line(start);
+            tokenColumn = lines.column(start);
+        }
+        if (errorHandler != null) {
+            errorHandler.reportError(type, tokenLine, tokenColumn, lexeme, reason);
+        }
+        this.tokenStart = start;
+        this.tokenEnd = end;
+        this.tokenLine = tokenLine;
+        this.tokenColumn = tokenColumn;
+        this.errorLexeme = lexeme;
+        return this.tokenType = TokenType.ERROR;
+    }
+
+    private Token token(TokenType type, int start, int end, int tokenLine, int tokenColumn) {
+
+        CharSequence text = input.text();
+        if (lines != null) {
+            return new Token(type, text, start, end, lines, -1);
+        }
+        if (text != null) {
+            return new Token(type, text, start, end, tokenLine, tokenColumn, -1);
+        }
+        return new Token(type, input.substring(start, end), tokenLine, tokenColumn);
+    }
+
+    // Move line and column past input[start, end), as Yylex does
+    private void countLines(int start, int end) {
+
+        boolean cr = false;
+        for (int pos = start; pos < end; pos++) {
+            switch (input.charAt(pos)) {
+                case '\u000B':
+                case '\u000C':
+                case '\u0085':
+                case '\u2028':
+                case '\u2029':
+                    line++;
+                    column = 0;
+                    cr = false;
+                    break;
+                case '\r':
+                    line++;
+                    column = 0;
+                    cr = true;
+                    break;
+                case '\n':
+                    if (cr) {
+                        cr = false;
+                    } else {
+                        line++;
+                        column = 0;
+                    }
+                    break;
+                default:
+                    cr = false;
+                    column++;
+            }
+        }
+
+        // A \r\n split across two matches is still one line break
+        if (cr && input.has(end) && input.charAt(end) == '\n') {
+            line--;
+        }
+    }
+
+    @Override
+    public int getCommentCount() {
+        return commentCount;
+    }
+
+    @Override
+    public int getLineCount() {
+        if (lines != null) {
+            return lines.line(position);
+        }
+        return line + 1;
+    }
+
+    @Override
+    public void setSymbolTable(SymbolStore table) {
+        this.symbolTable = table;
+    }
+
+    @Override
+    public void setErrorHandler(ErrorHandler handler) {
+        this.errorHandler = handler;
+    }
+}
@@ -0,0 +1,65 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/*
+ * CharRuns for byte input without the Vector API: SIMD within a register.
+ * Eight bytes are read as one little-endian long through a VarHandle view
+ * of the buffer, and every byte lane is tested at once with carry-free
+ * arithmetic, which holds because mapped input is ASCII (high bit clear):
+ *
+ *   x == b        ((x ^ b) + 0x7F) has its high bit clear
+ *   x >= low      (x + 0x80 - low) has its high bit set
+ *   x <= high     (x + 0x7F - high) has its high bit clear
+ *
+ * No lane sum passes 0xFF, so lanes never carry into each other. The
+ * result is a mask with bit 7 of each lane that ends the run; the first
+ * such lane is numberOfTrailingZeros(mask) / 8. Chars go through the
+ * scalar loop.
+ */
+final class SwarRuns extends CharRuns {
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH = 0x8080808080808080L;
+    private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+
+    @Override
+    public int runEnd(ByteBuffer bytes, int from, int to, int set) {
+
+        for (int bound = to - Long.BYTES; from <= bound; from += Long.BYTES) {
+            long mask = outside((long) LONGS.get(bytes, from), set);
+            if (mask != 0) {
+                return from + (Long.numberOfTrailingZeros(mask) >>> 3);
+            }
+        }
+        return super.runEnd(bytes, from, to, set);
+    }
+
+    // High bit of each lane not in set
+    static long outside(long word, int set) {
+        switch (set) {
+            case SPACES:
+                return ~equal(word, ' ') & HIGH;
+            case DIGITS:
+                return ~in(word, '0', '9') & HIGH;
+            case IDENTIFIER_TAIL:
+                return ~(in(word, 'a', 'z') | in(word, '0', '9') | equal(word, '_')) & HIGH;
+            case STRING_BODY:
+                return equal(word, '"') | equal(word, '\\') | equal(word, '\n');
+            default:
+                return equal(word, '\n') | equal(word, '\r');
+        }
+    }
+
+    private static long equal(long word, char b) {
+        return ~((word ^ (b * ONES)) + LOW7) & HIGH;
+    }
+
+    private static long in(long word, char low, char high) {
+        return (word + (0x80 - low) * ONES) & ~(word + (0x7F - high) * ONES) & HIGH;
+    }
+}
@@ -0,0 +1,40 @@
+import java.util.List;
+
+/*
+ * Where scanners record identifiers, and what callers read back. SymbolTable
+ * is the single-threaded implementation; ConcurrentSymbolTable is shared by
+ * several scanners at once. A symbol ID stays valid for the lifetime of the
+ * store, and getSymbol(id).getId() == id.
+ */
+public interface SymbolStore {
+
+    //explicitly stores identifiers; returns the symbol ID (-1 if not an identifier)
+    default int addIdentifier(String name, TokenType type, int line, int column) {
+        return (type == TokenType.IDENTIFIER) ? addIdentifier(name, 0, name.length(), line, column) : -1;
+    }
+
+    /* Record the identifier source[start, end); returns its symbol ID */
+    int addIdentifier(CharSequence source, int start, int end, int line, int column);
+
+    /* Fold a per-scanner table into this one; returns other's symbol IDs mapped to this store's */
+    int[] addAll(SymbolTable other);
+
+    /* Every symbol, in first-seen order (see the implementation) */
+    List<SymbolTable.SymbolInfo> entries();
+
+    SymbolTable.SymbolInfo lookup(String name);
+
+    /* All uses of an identifier ("Line X, Col Y"), empty if it never occurred */
+    List<String> findUses(String name);
+
+    SymbolTable.SymbolInfo getSymbol(int id);
+
+    /* Canonical (interned) name for a symbol ID */
+    String getName(int id);
+
+    void printTable();
+
+    void printCrossReference();
+
+    int getSize();
+}
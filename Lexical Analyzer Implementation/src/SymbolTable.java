@@ -1,45 +1,231 @@
 import java.util.*;
 
-public class SymbolTable 
+public class SymbolTable implements SymbolStore
 {
     private Map<String, SymbolInfo> symbols;
 
+    // Names are interned here; a symbol ID indexes both the pool and byId
+    private IdentifierPool pool = new IdentifierPool();
+    private List<SymbolInfo> byId = new ArrayList<>();
+
+    // Symbols with at least one use; replaceLines() can leave others behind with frequency 0
+    private int liveCount = 0;
+
     public SymbolTable() {
         symbols = new LinkedHashMap<>();
     }
 
-    //explicitly stores identifiers
-    public void addIdentifier(String name, TokenType type, int line, int column)
+    /*
+     * Record an identifier straight from the source text. The name is hashed
+     * and compared in place, so only its first occurrence allocates a String.
+     */
+    @Override
+    public int addIdentifier(CharSequence source, int start, int end, int line, int column)
     {
+        int id = pool.intern(source, start, end);
 
-    
-        if (type != TokenType.IDENTIFIER)
-        {
-            return;
-        }
-
-        if (symbols.containsKey(name)) 
+        if (id < byId.size()) 
         {
-            SymbolInfo info = symbols.get(name);
+            SymbolInfo info = byId.get(id);
+            if (info.getFrequency() == 0)
+            {
+                liveCount++;
+            }
             info.incrementFrequency();
             info.addLocation(line, column);
         } 
         
         else 
         {
-            SymbolInfo info = new SymbolInfo(name, TokenType.IDENTIFIER, line, column);
-            symbols.put(name, info);
+            SymbolInfo info = new SymbolInfo(id, pool.getName(id), TokenType.IDENTIFIER, line, column);
+            symbols.put(info.getName(), info);
+            byId.add(info);
+            liveCount++;
+        }
+
+        return id;
+    }
+
+    /*
+     * Fold another table into this one; its new identifiers are appended in
+     * its own order. Returns the other table's symbol IDs mapped to this one's.
+     */
+    @Override
+    public int[] addAll(SymbolTable other)
+    {
+        int[] ids = other.newIdMap();
+
+        for (SymbolInfo info : other.entries())
+        {
+            ids[info.getId()] = add(info, false);
         }
+
+        return ids;
+    }
+
+    // Map from this table's IDs to another's; -1 for symbols with no uses left
+    int[] newIdMap()
+    {
+        int[] ids = new int[byId.size()];
+        Arrays.fill(ids, -1);
+        return ids;
     }
 
+    /*
+     * Add another table's symbol with its uses. In place keeps the uses in
+     * (line, column) order, assuming the new ones fall between two of the
+     * existing ones, as re-lexed lines do.
+     */
+    private int add(SymbolInfo info, boolean inPlace)
+    {
+        int id = pool.intern(info.getName());
+
+        if (id < byId.size())
+        {
+            SymbolInfo existing = byId.get(id);
+            if (existing.getFrequency() == 0 && info.getFrequency() > 0)
+            {
+                liveCount++;
+            }
+            if (inPlace)
+            {
+                existing.insert(info);
+            }
+            else
+            {
+                existing.merge(info);
+            }
+        }
+        else
+        {
+            SymbolInfo copy = new SymbolInfo(id, info);
+            symbols.put(copy.getName(), copy);
+            byId.add(copy);
+            if (copy.getFrequency() > 0)
+            {
+                liveCount++;
+            }
+        }
+        return id;
+    }
+
+    /*
+     * Incremental re-lexing: forget the occurrences on lines [fromLine,
+     * toLine], move those after toLine by lineDelta, then add the
+     * occurrences from the replacement table (the re-lexed lines). Symbols
+     * whose last use disappears keep their ID (getSymbol() still works) but
+     * are hidden from lookup(), entries(), getSize() and the printouts
+     * until they are used again. Returns the replacement's symbol IDs
+     * mapped to this table's.
+     *
+     * touched lists the IDs used on the replaced lines (duplicates are
+     * fine). When the line count does not change only those symbols need
+     * visiting; otherwise every symbol's later occurrences are shifted.
+     * Occurrences are kept in order, so the replaced range of a symbol is
+     * found and filled by binary search rather than by re-sorting.
+     */
+    public int[] replaceLines(int fromLine, int toLine, int lineDelta,
+                              SymbolTable replacement, int[] touched)
+    {
+        if (lineDelta == 0)
+        {
+            for (int id : touched)
+            {
+                removeLines(byId.get(id), fromLine, toLine, 0);
+            }
+        }
+        else
+        {
+            for (SymbolInfo info : byId)
+            {
+                removeLines(info, fromLine, toLine, lineDelta);
+            }
+        }
+
+        int[] ids = replacement.newIdMap();
+        for (SymbolInfo info : replacement.entries())
+        {
+            ids[info.getId()] = add(info, true);
+        }
+        return ids;
+    }
+
+    private void removeLines(SymbolInfo info, int fromLine, int toLine, int lineDelta)
+    {
+        if (info.getFrequency() > 0)
+        {
+            info.removeLines(fromLine, toLine, lineDelta);
+            if (info.getFrequency() == 0)
+            {
+                liveCount--;
+            }
+        }
+    }
+
+    // Symbols in ID order (= first-seen order until replaceLines() is used), skipping unused ones
+    @Override
+    public List<SymbolInfo> entries()
+    {
+        if (liveCount == byId.size())
+        {
+            return Collections.unmodifiableList(byId);
+        }
+
+        List<SymbolInfo> live = new ArrayList<>(liveCount);
+        for (SymbolInfo info : byId)
+        {
+            if (info.getFrequency() > 0)
+            {
+                live.add(info);
+            }
+        }
+        return Collections.unmodifiableList(live);
+    }
+
+    @Override
+    public SymbolInfo lookup(String name)
+    {
+        SymbolInfo info = symbols.get(name);
+        return (info == null || info.getFrequency() == 0) ? null : info;
+    }
+
+    @Override
+    public List<String> findUses(String name)
+    {
+        SymbolInfo info = lookup(name);
+        return (info == null) ? Collections.emptyList() : info.getLocations();
+    }
+
+    @Override
+    public SymbolInfo getSymbol(int id)
+    {
+        return byId.get(id);
+    }
+
+    @Override
+    public String getName(int id)
+    {
+        return pool.getName(id);
+    }
+
+    @Override
     public void printTable()
+    {
+        printTable(symbols.values());
+    }
+
+    // Shared with ConcurrentSymbolTable, which lists its symbols in its own order
+    static void printTable(Iterable<SymbolInfo> infos)
     {
         System.out.println("\n========== SYMBOL TABLE ==========");
         System.out.printf("%-20s %-10s %-10s %-20s\n",
                 "Identifier", "Type", "Frequency", "First Occurrence");
         System.out.println("--------------------------------------------------------");
 
-        for (SymbolInfo info : symbols.values()) {
+        for (SymbolInfo info : infos) {
+            if (info.getFrequency() == 0) {
+                continue;
+            }
             System.out.printf("%-20s %-10s %-10d Line: %d, Col: %d\n",
                     info.getName(),
                     info.getType(),
@@ -51,31 +237,173 @@ public class SymbolTable
         System.out.println("====================================\n");
     }
 
+    /* Every identifier followed by all of its uses */
+    @Override
+    public void printCrossReference()
+    {
+        printCrossReference(entries());
+    }
+
+    static void printCrossReference(Iterable<SymbolInfo> infos)
+    {
+        System.out.println("\n========== CROSS REFERENCE ==========");
+
+        for (SymbolInfo info : infos) {
+            if (info.getOccurrenceCount() == 0) {
+                continue;
+            }
+            System.out.printf("%-20s (%d uses)\n", info.getName(), info.getOccurrenceCount());
+            for (int i = 0; i < info.getOccurrenceCount(); i++) {
+                System.out.printf("    Line: %d, Col: %d\n", info.getLine(i), info.getColumn(i));
+            }
+        }
+
+        System.out.println("=====================================\n");
+    }
+
+    @Override
     public int getSize() 
     {
-        return symbols.size();
+        return liveCount;
     }
 
     public static class SymbolInfo
     {
+        private int id;
         private String name;
         private TokenType type;
         private int frequency;
         private int firstLine;
         private int firstColumn;
-        private List<String> locations;
+
+        // Every use, packed as (line << 32 | column); formatted only when asked for
+        private long[] occurrences;
+        private int occurrenceCount;
 
         public SymbolInfo(String name, TokenType type, int line, int column)
         {
+            this(-1, name, type, line, column);
+        }
+
+        private SymbolInfo(int id, String name, TokenType type, int line, int column)
+        {
+            this.id = id;
             this.name = name;
             this.type = type;
             this.frequency = 1;
             this.firstLine = line;
             this.firstColumn = column;
-            this.locations = new ArrayList<>();
+            this.occurrences = new long[4];
             addLocation(line, column);
         }
 
+        private SymbolInfo(int id, SymbolInfo other)
+        {
+            this.id = id;
+            this.name = other.name;
+            this.type = other.type;
+            this.frequency = other.frequency;
+            this.firstLine = other.firstLine;
+            this.firstColumn = other.firstColumn;
+            this.occurrences = Arrays.copyOf(other.occurrences, Math.max(4, other.occurrenceCount));
+            this.occurrenceCount = other.occurrenceCount;
+        }
+
+        /* Symbol with the given uses (packed as occurrences are), already in order */
+        SymbolInfo(int id, String name, long[] occurrences, int count)
+        {
+            this.id = id;
+            this.name = name;
+            this.type = TokenType.IDENTIFIER;
+            this.frequency = count;
+            this.occurrences = occurrences;
+            this.occurrenceCount = count;
+            updateFirstOccurrence();
+        }
+
+        private void merge(SymbolInfo other)
+        {
+            frequency += other.frequency;
+            ensureCapacity(occurrenceCount + other.occurrenceCount);
+            System.arraycopy(other.occurrences, 0, occurrences, occurrenceCount, other.occurrenceCount);
+            occurrenceCount += other.occurrenceCount;
+        }
+
+        private void ensureCapacity(int capacity)
+        {
+            if (capacity > occurrences.length)
+            {
+                occurrences = Arrays.copyOf(occurrences, Math.max(capacity, occurrences.length * 2));
+            }
+        }
+
+        // Drop occurrences on lines [fromLine, toLine]; shift later ones by lineDelta
+        private void removeLines(int fromLine, int toLine, int lineDelta)
+        {
+            int from = search((long) fromLine << 32);
+            int to = search((long) (toLine + 1) << 32);
+
+            if (lineDelta != 0)
+            {
+                for (int i = to; i < occurrenceCount; i++)
+                {
+                    occurrences[i] += (long) lineDelta << 32;
+                }
+            }
+            System.arraycopy(occurrences, to, occurrences, from, occurrenceCount - to);
+
+            frequency -= to - from;
+            occurrenceCount -= to - from;
+            updateFirstOccurrence();
+        }
+
+        // Add other's (ordered) uses where they belong; they must not straddle any of ours
+        private void insert(SymbolInfo other)
+        {
+            if (other.occurrenceCount == 0)
+            {
+                return;
+            }
+            int at = search(other.occurrences[0]);
+
+            ensureCapacity(occurrenceCount + other.occurrenceCount);
+            System.arraycopy(occurrences, at, occurrences, at + other.occurrenceCount, occurrenceCount - at);
+            System.arraycopy(other.occurrences, 0, occurrences, at, other.occurrenceCount);
+
+            frequency += other.frequency;
+            occurrenceCount += other.occurrenceCount;
+            updateFirstOccurrence();
+        }
+
+        // Index of the first occurrence at or after the packed position
+        private int search(long position)
+        {
+            int low = 0;
+            int high = occurrenceCount;
+            while (low < high)
+            {
+                int middle = (low + high) >>> 1;
+                if (occurrences[middle] < position)
+                {
+                    low = middle + 1;
+                }
+                else
+                {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private void updateFirstOccurrence()
+        {
+            if (occurrenceCount > 0)
+            {
+                firstLine = getLine(0);
+                firstColumn = getColumn(0);
+            }
+        }
+
         public void incrementFrequency() 
         {
             frequency++;
@@ -83,7 +411,48 @@ public class SymbolTable
 
         public void addLocation(int line, int column) 
         {
-            locations.add("Line " + line + ", Col " + column);
+            ensureCapacity(occurrenceCount + 1);
+            occurrences[occurrenceCount++] = ((long) line << 32) | (column & 0xFFFFFFFFL);
+        }
+
+        public int getOccurrenceCount()
+        {
+            return occurrenceCount;
+        }
+
+        public int getLine(int occurrence)
+        {
+            return (int) (occurrences[checkOccurrence(occurrence)] >>> 32);
+        }
+
+        public int getColumn(int occurrence)
+        {
+            return (int) occurrences[checkOccurrence(occurrence)];
+        }
+
+        /* Every use as "Line X, Col Y", in the order they were recorded */
+        public List<String> getLocations()
+        {
+            List<String> locations = new ArrayList<>(occurrenceCount);
+            for (int i = 0; i < occurrenceCount; i++)
+            {
+                locations.add("Line " + getLine(i) + ", Col " + getColumn(i));
+            }
+            return locations;
+        }
+
+        private int checkOccurrence(int occurrence)
+        {
+            if (occurrence < 0 || occurrence >= occurrenceCount)
+            {
+                throw new IndexOutOfBoundsException("Occurrence " + occurrence + ", count " + occurrenceCount);
+            }
+            return occurrence;
+        }
+
+        public int getId()
+        {
+            return id;
         }
 
         public String getName()
@@ -3,17 +3,85 @@ public class Token
 {
    
 	private TokenType type;
-    private String lexeme;
-    private int line;
+    private String lexeme;      // built from source on first use when null
+    private CharSequence source;
+    private int start;
+    private int end;
+    private int line;           // 0 until resolved from lines
     private int column;
+    private LineIndex lines;    // set when the position is worked out on demand
+    private int symbolId;       // SymbolTable ID for identifiers, -1 otherwise
+    private long value;         // INTEGER_LITERAL value, or FLOAT_LITERAL's double bits
     
     public Token(TokenType type, String lexeme, int line, int column) 
     
+    {
+        this(type, lexeme, line, column, -1);
+    }
+    
+    public Token(TokenType type, String lexeme, int line, int column, int symbolId) 
+    
     {
         this.type = type;
         this.lexeme = lexeme;
         this.line = line;
         this.column = column;
+        this.symbolId = symbolId;
+    }
+    
+    /* Lexeme is source[start, end); the String is only built if someone asks for it */
+    Token(TokenType type, CharSequence source, int start, int end, int line, int column, int symbolId)
+    
+    {
+        this.type = type;
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        this.line = line;
+        this.column = column;
+        this.symbolId = symbolId;
+    }
+    
+    /* Lexeme is source[start, end); line and column are looked up in lines if someone asks for them */
+    Token(TokenType type, CharSequence source, int start, int end, LineIndex lines, int symbolId)
+    
+    {
+        this(type, source, start, end, 0, 0, symbolId);
+        this.lines = lines;
+    }
+
+    /* Lexeme already built; the token starts at offset start, line and column are looked up in lines */
+    Token(TokenType type, String lexeme, int start, LineIndex lines)
+
+    {
+        this(type, lexeme, 0, 0, -1);
+        this.start = start;
+        this.lines = lines;
+    }
+
+    /* Same token with another symbol ID (the lexeme is still not built) */
+    Token withSymbolId(int symbolId)
+    
+    {
+        if (lines != null && line == 0)
+        {
+            Token token = new Token(type, source, start, end, lines, symbolId);
+            token.lexeme = lexeme;
+            token.value = value;
+            return token;
+        }
+        Token token = (lexeme != null)
+                ? new Token(type, lexeme, line, column, symbolId)
+                : new Token(type, source, start, end, line, column, symbolId);
+        token.value = value;
+        return token;
+    }
+    
+    /* Literal value decoded by the scanner (a long, or the bits of a double) */
+    void setValue(long value)
+    
+    {
+        this.value = value;
     }
     
     public TokenType getType() 
@@ -23,24 +91,80 @@ public class Token
     
     public String getLexeme()
     {
+        if (lexeme == null)
+        {
+            lexeme = source.subSequence(start, end).toString();
+        }
         return lexeme;
         
     }
     
     public int getLine() 
     {
+        resolvePosition();
         return line;
     }
     
     public int getColumn() 
     {
+        resolvePosition();
         return column;
     }
     
+    /* Offset of the first character in the source, for tokens that keep their range */
+    public int getStart()
+    {
+        return start;
+    }
+    
+    private void resolvePosition()
+    {
+        if (line == 0 && lines != null)
+        {
+            line = lines.line(start);
+            column = lines.column(start);
+        }
+    }
+    
+    public int getSymbolId() 
+    {
+        return symbolId;
+    }
+    
+    /* Value of an INTEGER_LITERAL, decoded while scanning; 0 for other tokens */
+    public long getLongValue()
+    {
+        return value;
+    }
+    
+    /* Value of a FLOAT_LITERAL, decoded while scanning; 0.0 for other tokens */
+    public double getDoubleValue()
+    {
+        return Double.longBitsToDouble(value);
+    }
+    
     @Override
     public String toString()
     
     {
-        return "<" + type + ", \"" + lexeme + "\", Line: " + line + ", Col: " + column + ">";
+        int length = (lexeme != null) ? lexeme.length() : end - start;
+        return appendTo(new StringBuilder(length + 48)).toString();
+    }
+    
+    /* Same text as toString(), appended to a caller-owned builder */
+    public StringBuilder appendTo(StringBuilder out)
+    
+    {
+        out.append('<').append(type).append(", \"");
+        if (lexeme != null)
+        {
+            out.append(lexeme);
+        }
+        else
+        {
+            out.append(source, start, end);
+        }
+        resolvePosition();
+        return out.append("\", Line: ").append(line).append(", Col: ").append(column).append('>');
     }
 }
\ No newline at end of file
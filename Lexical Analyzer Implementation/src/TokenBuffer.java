@@ -0,0 +1,158 @@
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/*
+ * Compact token store: one entry per token spread over parallel primitive
+ * arrays (type ordinal, start offset, length, line, column) instead of one
+ * Token object plus a lexeme String each.
+ *
+ * Offsets index either the program text the buffer was created over, or,
+ * for scanners that do not keep their input around, the buffer's own
+ * character pool that lexemes are appended to.
+ */
+public class TokenBuffer {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final CharSequence source;     // null when lexemes live in pool
+    private final StringBuilder pool;
+
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] columns = new int[INITIAL_CAPACITY];
+    private int[] symbolIds = new int[INITIAL_CAPACITY];      // -1 unless an identifier
+
+    private int size = 0;
+
+    /* Tokens index into source */
+    public TokenBuffer(CharSequence source) {
+        this.source = source;
+        this.pool = null;
+    }
+
+    /* Tokens carry their own text (e.g. tokens coming out of Yylex) */
+    public TokenBuffer() {
+        this.source = null;
+        this.pool = new StringBuilder();
+    }
+
+    /* Record a token whose lexeme is text[start, start + length) */
+    public void add(TokenType type, int start, int length, int line, int column) {
+        add(type, start, length, line, column, -1);
+    }
+
+    public void add(TokenType type, int start, int length, int line, int column, int symbolId) {
+
+        if (size == types.length) {
+            grow();
+        }
+
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        columns[size] = column;
+        symbolIds[size] = symbolId;
+        size++;
+    }
+
+    /* Record a token by copying its lexeme into the pool */
+    public void add(TokenType type, CharSequence lexeme, int line, int column) {
+        add(type, lexeme, line, column, -1);
+    }
+
+    public void add(TokenType type, CharSequence lexeme, int line, int column, int symbolId) {
+
+        if (pool == null) {
+            throw new IllegalStateException("TokenBuffer is backed by source text");
+        }
+
+        int start = pool.length();
+        pool.append(lexeme);
+        add(type, start, lexeme.length(), line, column, symbolId);
+    }
+
+    public void add(Token token) {
+        add(token.getType(), token.getLexeme(), token.getLine(), token.getColumn(), token.getSymbolId());
+    }
+
+    private void grow() {
+        int capacity = types.length * 2;
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        columns = Arrays.copyOf(columns, capacity);
+        symbolIds = Arrays.copyOf(symbolIds, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TokenType getType(int index) {
+        return TYPES[types[check(index)]];
+    }
+
+    public int getStart(int index) {
+        return starts[check(index)];
+    }
+
+    public int getLength(int index) {
+        return lengths[check(index)];
+    }
+
+    public int getLine(int index) {
+        return lines[check(index)];
+    }
+
+    public int getColumn(int index) {
+        return columns[check(index)];
+    }
+
+    public int getSymbolId(int index) {
+        return symbolIds[check(index)];
+    }
+
+    /* View of the lexeme; no characters are copied */
+    public CharSequence getLexeme(int index) {
+        check(index);
+        return CharBuffer.wrap(text(), starts[index], starts[index] + lengths[index]);
+    }
+
+    /* Materialise a single entry as a Token (its lexeme String is built on demand) */
+    public Token get(int index) {
+        check(index);
+        int start = starts[index];
+        int end = start + lengths[index];
+        if (source != null) {
+            return new Token(TYPES[types[index]], source, start, end, lines[index], columns[index], symbolIds[index]);
+        }
+        String lexeme = pool.substring(start, end);
+        return new Token(TYPES[types[index]], lexeme, lines[index], columns[index], symbolIds[index]);
+    }
+
+    /* Same text as get(index).toString(), appended without building the Token */
+    public StringBuilder appendTo(int index, StringBuilder out) {
+        check(index);
+        int start = starts[index];
+        return out.append('<').append(TYPES[types[index]]).append(", \"")
+                  .append(text(), start, start + lengths[index])
+                  .append("\", Line: ").append(lines[index])
+                  .append(", Col: ").append(columns[index]).append('>');
+    }
+
+    private CharSequence text() {
+        return (source != null) ? source : pool;
+    }
+
+    private int check(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Token index " + index + ", size " + size);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,434 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+/*
+ * On-disk cache of per-file scan results, so a batch scan over a mostly
+ * unchanged tree only re-lexes the files that changed.
+ *
+ * Entries are keyed by the file's contents (CRC32C and CRC32 of its bytes,
+ * both computed with hardware instructions by the JDK, 64 bits together)
+ * and by a fingerprint of the scanner: the options that change its output
+ * plus the code the scanner was loaded from (see CodeFingerprint), so a
+ * rebuilt scanner never sees results from an older one. An entry holds the token counts, the file's
+ * symbol occurrences and errors, then the counted tokens in the format
+ * written by TokenStreamWriter.
+ *
+ * The index file lists entries least recently used first. close() evicts
+ * from the front until the cache fits its size cap and writes it back.
+ */
+public class TokenCache implements Closeable {
+
+    static final byte[] MAGIC = { 'W', 'T', 'K', 'C' };
+    static final int VERSION = 1;
+
+    private static final String INDEX = "index";
+    private static final String SUFFIX = ".wtc";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long fingerprint;
+
+    // Entry file name -> size in bytes, least recently used first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes = 0;
+
+    private int hits = 0;
+    private int misses = 0;
+
+    /*
+     * options: anything besides the scanner code that changes its output
+     * (engine, error limits, ...). scanner: the classes doing the scanning;
+     * the jar or class directory each was loaded from is hashed.
+     */
+    public TokenCache(Path directory, long maxBytes, String options, Class<?>... scanner)
+            throws IOException {
+
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.fingerprint = fingerprint(options, scanner);
+
+        Files.createDirectories(directory);
+        loadIndex();
+    }
+
+    /* ---------- Scan results ---------- */
+
+    /* What a scan of one file produced */
+    public static final class Entry {
+
+        private final Map<TokenType, Integer> tokenStats;
+        private final SymbolTable symbolTable;
+        private final ErrorHandler errorHandler;
+        private final ByteBuffer tokens;
+
+        /* tokens: a complete stream written by TokenStreamWriter */
+        public Entry(Map<TokenType, Integer> tokenStats, SymbolTable symbolTable,
+                     ErrorHandler errorHandler, ByteBuffer tokens) {
+
+            this.tokenStats = tokenStats;
+            this.symbolTable = symbolTable;
+            this.errorHandler = errorHandler;
+            this.tokens = tokens;
+        }
+
+        public Map<TokenType, Integer> getTokenStats() {
+            return tokenStats;
+        }
+
+        public SymbolTable getSymbolTable() {
+            return symbolTable;
+        }
+
+        public ErrorHandler getErrorHandler() {
+            return errorHandler;
+        }
+
+        public TokenStreamReader getTokens() throws IOException {
+            return new TokenStreamReader(tokens.duplicate());
+        }
+    }
+
+    /* Content hash of a file, the key for load() and store() */
+    public static long hash(Path file) throws IOException {
+        return hash(MappedFileReader.mapFile(file));
+    }
+
+    /* Content hash of a mapped file's current bytes */
+    public static long hash(ByteBuffer bytes) {
+
+        CRC32C crc32c = new CRC32C();
+        crc32c.update(bytes.duplicate());
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes.duplicate());
+
+        return (crc32c.getValue() << 32) | crc32.getValue();
+    }
+
+    /* Cached result for a content hash, or null */
+    public Entry load(long hash) {
+
+        String name = entryName(hash);
+        synchronized (entries) {
+            if (entries.get(name) == null) {
+                misses++;
+                return null;
+            }
+        }
+
+        try {
+            Entry entry = decode(ByteBuffer.wrap(Files.readAllBytes(directory.resolve(name))), hash);
+            synchronized (entries) {
+                hits++;
+            }
+            return entry;
+        }
+        catch (IOException | RuntimeException e) {
+            // Missing, truncated or from another scanner: treat as a miss and drop it
+            synchronized (entries) {
+                misses++;
+                remove(name);
+            }
+            return null;
+        }
+    }
+
+    public void store(long hash, Entry entry) throws IOException {
+
+        String name = entryName(hash);
+        byte[] bytes = encode(entry, hash);
+
+        // Never leave a half-written entry under its real name
+        Path temp = Files.createTempFile(directory, name, ".tmp");
+        try {
+            Files.write(temp, bytes);
+            Files.move(temp, directory.resolve(name),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        synchronized (entries) {
+            Long old = entries.put(name, (long) bytes.length);
+            totalBytes += bytes.length - (old == null ? 0 : old);
+        }
+    }
+
+    /*
+     * Store an entry lexed from the mapped bytes that hashed to hash, unless
+     * the file was rewritten while it was being lexed (a mapping shows the
+     * new contents, so the entry may not match either version). Returns
+     * whether it was stored.
+     */
+    public boolean storeIfUnchanged(long hash, ByteBuffer source, Entry entry) throws IOException {
+
+        if (hash(source) != hash) {
+            return false;
+        }
+        store(hash, entry);
+        return true;
+    }
+
+    /* Cached tokens of a file as it is now, or null if it has no entry */
+    public TokenStreamReader getTokens(Path file) throws IOException {
+        Entry entry = load(hash(file));
+        return (entry == null) ? null : entry.getTokens();
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getTotalBytes() {
+        synchronized (entries) {
+            return totalBytes;
+        }
+    }
+
+    /* Evict down to the size cap and write the index */
+    @Override
+    public void close() throws IOException {
+
+        synchronized (entries) {
+
+            Iterator<Map.Entry<String, Long>> oldest = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && oldest.hasNext()) {
+                Map.Entry<String, Long> entry = oldest.next();
+                Files.deleteIfExists(directory.resolve(entry.getKey()));
+                totalBytes -= entry.getValue();
+                oldest.remove();
+            }
+
+            saveIndex();
+        }
+    }
+
+    private void remove(String name) {
+        Long size = entries.remove(name);
+        if (size != null) {
+            totalBytes -= size;
+        }
+    }
+
+    private String entryName(long hash) {
+        return String.format("%016x%016x%s", hash, fingerprint, SUFFIX);
+    }
+
+    /* ---------- Entry format ---------- */
+
+    /*
+     *   header        "WTKC", version, scanner fingerprint, content hash
+     *   token counts  count, then (type name, count) for each type seen
+     *   symbols       count, then per symbol: name, occurrence count,
+     *                 (line, column) per occurrence in order
+     *   errors        count, then (type name, line, column, lexeme, reason)
+     *   tokens        length, then a TokenStreamWriter stream
+     *
+     * Integers are 4 bytes, the fingerprint and hash 8, big-endian; strings
+     * are a byte count and UTF-8 (count -1 for null).
+     */
+    private byte[] encode(Entry entry, long hash) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + entry.tokens.remaining());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(bytes, 1 << 16));
+
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(fingerprint);
+        out.writeLong(hash);
+
+        Map<TokenType, Integer> stats = new EnumMap<>(TokenType.class);
+        for (Map.Entry<TokenType, Integer> stat : entry.tokenStats.entrySet()) {
+            if (stat.getValue() > 0) {
+                stats.put(stat.getKey(), stat.getValue());
+            }
+        }
+        out.writeInt(stats.size());
+        for (Map.Entry<TokenType, Integer> stat : stats.entrySet()) {
+            writeString(out, stat.getKey().name());
+            out.writeInt(stat.getValue());
+        }
+
+        List<SymbolTable.SymbolInfo> symbols = entry.symbolTable.entries();
+        out.writeInt(symbols.size());
+        for (SymbolTable.SymbolInfo symbol : symbols) {
+            writeString(out, symbol.getName());
+            out.writeInt(symbol.getOccurrenceCount());
+            for (int i = 0; i < symbol.getOccurrenceCount(); i++) {
+                out.writeInt(symbol.getLine(i));
+                out.writeInt(symbol.getColumn(i));
+            }
+        }
+
+        List<ErrorHandler.CompilationError> errors = entry.errorHandler.getErrors();
+        out.writeInt(errors.size());
+        for (ErrorHandler.CompilationError error : errors) {
+            writeString(out, error.getType().name());
+            out.writeInt(error.getLine());
+            out.writeInt(error.getColumn());
+            writeString(out, error.getLexeme());
+            writeString(out, error.getReason());
+        }
+
+        ByteBuffer tokens = entry.tokens.duplicate();
+        byte[] stream = new byte[tokens.remaining()];
+        tokens.get(stream);
+        out.writeInt(stream.length);
+        out.write(stream);
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private Entry decode(ByteBuffer in, long hash) throws IOException {
+
+        for (byte b : MAGIC) {
+            if (in.get() != b) {
+                throw new IOException("Not a token cache entry");
+            }
+        }
+        if (in.getInt() != VERSION || in.getLong() != fingerprint || in.getLong() != hash) {
+            throw new IOException("Token cache entry does not match");
+        }
+
+        Map<TokenType, Integer> stats = new EnumMap<>(TokenType.class);
+        for (int count = in.getInt(); count > 0; count--) {
+            stats.put(TokenType.valueOf(readString(in)), in.getInt());
+        }
+
+        SymbolTable symbols = new SymbolTable();
+        for (int count = in.getInt(); count > 0; count--) {
+            String name = readString(in);
+            int occurrences = in.getInt();
+            int id = symbols.addIdentifier(name, TokenType.IDENTIFIER, in.getInt(), in.getInt());
+
+            SymbolTable.SymbolInfo symbol = symbols.getSymbol(id);
+            for (int i = 1; i < occurrences; i++) {
+                symbol.incrementFrequency();
+                symbol.addLocation(in.getInt(), in.getInt());
+            }
+        }
+
+        ErrorHandler errors = new ErrorHandler();
+        errors.setEcho(false);
+        for (int count = in.getInt(); count > 0; count--) {
+            ErrorHandler.ErrorType type = ErrorHandler.ErrorType.valueOf(readString(in));
+            int line = in.getInt();
+            int column = in.getInt();
+            errors.reportError(type, line, column, readString(in), readString(in));
+        }
+
+        int length = in.getInt();
+        ByteBuffer tokens = in.slice().limit(length);
+
+        return new Entry(stats, symbols, errors, tokens);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    /* ---------- Index ---------- */
+
+    // count, then (name, size) per entry, least recently used first
+    private void loadIndex() throws IOException {
+
+        Path index = directory.resolve(INDEX);
+        if (Files.exists(index)) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(index)))) {
+
+                for (int count = in.readInt(); count > 0; count--) {
+                    String name = in.readUTF();
+                    long size = in.readLong();
+                    entries.put(name, size);
+                    totalBytes += size;
+                }
+                return;
+            }
+            catch (IOException e) {
+                entries.clear();
+                totalBytes = 0;
+            }
+        }
+
+        // No usable index: take whatever entries are on disk, in no particular order
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SUFFIX)) {
+                    long size = Files.size(file);
+                    entries.put(name, size);
+                    totalBytes += size;
+                }
+            }
+        }
+    }
+
+    private void saveIndex() throws IOException {
+
+        Path temp = directory.resolve(INDEX + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)))) {
+
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        }
+        Files.move(temp, directory.resolve(INDEX),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /* ---------- Scanner fingerprint ---------- */
+
+    private static long fingerprint(String options, Class<?>... scanner) throws IOException {
+
+        CRC32C crc32c = new CRC32C();
+        CRC32 crc32 = new CRC32();
+
+        byte[] text = (VERSION + ":" + options).getBytes(StandardCharsets.UTF_8);
+        crc32c.update(text);
+        crc32.update(text);
+
+        for (Class<?> type : scanner) {
+            byte[] code = Long.toString(CodeFingerprint.of(type)).getBytes(StandardCharsets.UTF_8);
+            crc32c.update(code);
+            crc32.update(code);
+        }
+
+        return (crc32c.getValue() << 32) | crc32.getValue();
+    }
+}
@@ -0,0 +1,238 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+ * Reads a binary token stream written by TokenStreamWriter.
+ *
+ * The file is memory-mapped and records are decoded in place as the
+ * cursor moves; nothing is copied up front. A lexeme is decoded from the
+ * string table the first time its ID is asked for and cached after that,
+ * so repeated identifiers cost one String in total.
+ */
+public class TokenStreamReader implements Iterable<Token> {
+
+    private static final int TRAILER_SIZE = 12;
+
+    private final ByteBuffer bytes;
+    private final TokenType[] types;        // stream type index -> TokenType
+    private final boolean offsets;
+    private final int tokenCount;
+    private final int recordsStart;
+
+    // String table: where each entry's UTF-8 bytes start, and their length
+    private final int[] stringStarts;
+    private final int[] stringLengths;
+    private final String[] stringCache;
+
+    // Cursor: the record read by the last next() call
+    private int position;
+    private int index = -1;
+    private TokenType type;
+    private int stringId;
+    private int line = 1;
+    private int column = 0;
+    private long offset = 0;
+
+    public TokenStreamReader(ByteBuffer bytes) throws IOException {
+
+        this.bytes = bytes;
+        position = 0;
+
+        for (byte b : TokenStreamWriter.MAGIC) {
+            if (bytes.limit() < TRAILER_SIZE || bytes.get(position++) != b) {
+                throw new IOException("Not a token stream");
+            }
+        }
+        int version = bytes.get(position++);
+        if (version != TokenStreamWriter.VERSION) {
+            throw new IOException("Unsupported token stream version " + version);
+        }
+        offsets = (bytes.get(position++) & TokenStreamWriter.FLAG_OFFSETS) != 0;
+
+        types = new TokenType[(int) readVarint()];
+        for (int i = 0; i < types.length; i++) {
+            String name = readString();
+            try {
+                types[i] = TokenType.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown token type in stream: " + name);
+            }
+        }
+        recordsStart = position;
+
+        int trailer = bytes.limit() - TRAILER_SIZE;
+        tokenCount = bytes.getInt(trailer);
+        position = (int) bytes.getLong(trailer + 4);
+
+        int strings = (int) readVarint();
+        stringStarts = new int[strings];
+        stringLengths = new int[strings];
+        stringCache = new String[strings];
+        for (int i = 0; i < strings; i++) {
+            stringLengths[i] = (int) readVarint();
+            stringStarts[i] = position;
+            position += stringLengths[i];
+        }
+
+        position = recordsStart;
+    }
+
+    public static TokenStreamReader open(Path file) throws IOException {
+        return new TokenStreamReader(MappedFileReader.mapFile(file));
+    }
+
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    public boolean hasOffsets() {
+        return offsets;
+    }
+
+    /* Move to the next record; false once all tokens have been read */
+    public boolean next() {
+
+        if (index + 1 >= tokenCount) {
+            return false;
+        }
+        index++;
+
+        type = types[(int) readVarint()];
+        stringId = (int) readVarint();
+
+        int lineDelta = unzigzag(readVarint());
+        line += lineDelta;
+        column = (lineDelta == 0) ? column + unzigzag(readVarint()) : (int) readVarint();
+
+        if (offsets) {
+            offset += readVarint();
+        }
+        return true;
+    }
+
+    public TokenType getType() {
+        return type;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    /* Character offset in the source, or -1 if the stream has no offsets */
+    public long getOffset() {
+        return offsets ? offset : -1;
+    }
+
+    /* Equal lexemes have equal IDs, so this can be compared instead of the text */
+    public int getLexemeId() {
+        return stringId;
+    }
+
+    public String getLexeme() {
+        return getString(stringId);
+    }
+
+    public String getString(int id) {
+
+        String value = stringCache[id];
+        if (value == null) {
+            byte[] utf8 = new byte[stringLengths[id]];
+            bytes.get(stringStarts[id], utf8);
+            value = new String(utf8, StandardCharsets.UTF_8);
+            stringCache[id] = value;
+        }
+        return value;
+    }
+
+    public Token getToken() {
+        return new Token(type, getLexeme(), line, column);
+    }
+
+    /* Iterate over the remaining records as Tokens */
+    @Override
+    public Iterator<Token> iterator() {
+
+        return new Iterator<Token>() {
+
+            @Override
+            public boolean hasNext() {
+                return index + 1 < tokenCount;
+            }
+
+            @Override
+            public Token next() {
+                if (!TokenStreamReader.this.next()) {
+                    throw new NoSuchElementException();
+                }
+                return getToken();
+            }
+        };
+    }
+
+    /* ---------- Decoding ---------- */
+
+    private long readVarint() {
+
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes.get(position++);
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static int unzigzag(long value) {
+        int n = (int) value;
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private String readString() {
+        int length = (int) readVarint();
+        byte[] utf8 = new byte[length];
+        bytes.get(position, utf8);
+        position += length;
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /* ---------- Command line ---------- */
+
+    public static void printUsage() {
+
+        System.out.println("==========================================");
+        System.out.println("           TOKEN STREAM READER");
+        System.out.println("==========================================");
+        System.out.println("Usage: java TokenStreamReader <input.tok>");
+        System.out.println("Prints the tokens in the same form as AutoScannerMain");
+        System.out.println("==========================================");
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length != 1) {
+            printUsage();
+            return;
+        }
+
+        TokenStreamReader reader = open(Paths.get(args[0]));
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        StringBuilder text = new StringBuilder(128);
+
+        while (reader.next()) {
+            text.setLength(0);
+            reader.getToken().appendTo(text).append('\n');
+            out.append(text);
+        }
+        out.flush();
+    }
+}
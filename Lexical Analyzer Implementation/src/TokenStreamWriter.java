@@ -0,0 +1,220 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/*
+ * Writes the binary token stream format read by TokenStreamReader, so
+ * later stages (e.g. the parsers) can load tokens without re-lexing.
+ *
+ * Layout (all integers are unsigned LEB128 varints unless noted):
+ *
+ *   header        "WTOK", version byte, flags byte (bit 0: offsets present)
+ *   type table    count, then each TokenType name (length + UTF-8 bytes);
+ *                 records refer to types by their index in this table
+ *   records       per token: type index, lexeme string ID, line delta,
+ *                 column (delta from the previous token if on the same
+ *                 line, otherwise absolute), offset delta (if flagged);
+ *                 line and column deltas are zigzag-encoded
+ *   string table  count, then each distinct lexeme (length + UTF-8 bytes),
+ *                 in first-use order
+ *   trailer       token count (4 bytes), string table position (8 bytes),
+ *                 both big-endian
+ *
+ * Tokens arrive in source order, so deltas are small and almost always
+ * non-negative; zigzag keeps the odd backwards step (e.g. a scanner's
+ * column after backtracking) cheap instead of an error.
+ */
+public class TokenStreamWriter implements Closeable {
+
+    static final byte[] MAGIC = { 'W', 'T', 'O', 'K' };
+    static final int VERSION = 1;
+    static final int FLAG_OFFSETS = 1;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final OutputStream out;
+    private final boolean offsets;
+
+    private final byte[] buffer = new byte[1 << 16];
+    private int count = 0;
+    private long written = 0;
+
+    // Lexemes are deduplicated from their source range; the pool ID is the string ID
+    private final IdentifierPool strings = new IdentifierPool();
+
+    private int tokens = 0;
+    private int lastLine = 1;
+    private int lastColumn = 0;
+    private long lastOffset = 0;
+
+    /* offsets: also record each token's character offset in the source */
+    public TokenStreamWriter(OutputStream out, boolean offsets) throws IOException {
+
+        this.out = out;
+        this.offsets = offsets;
+
+        for (byte b : MAGIC) {
+            writeByte(b);
+        }
+        writeByte(VERSION);
+        writeByte(offsets ? FLAG_OFFSETS : 0);
+
+        writeVarint(TYPES.length);
+        for (TokenType type : TYPES) {
+            writeString(type.name());
+        }
+    }
+
+    public static TokenStreamWriter create(Path file, boolean offsets) throws IOException {
+        return new TokenStreamWriter(Files.newOutputStream(file), offsets);
+    }
+
+    /* A token whose lexeme is text[start, end) */
+    public void write(TokenType type, CharSequence text, int start, int end,
+                      int line, int column, long offset) throws IOException {
+
+        // Before any byte is written or the lexeme is interned, so a rejected token leaves no trace
+        if (offsets && offset < lastOffset) {
+            throw new IllegalArgumentException("Tokens must be written in source order");
+        }
+
+        writeVarint(type.ordinal());
+        writeVarint(strings.intern(text, start, end));
+        writeVarint(zigzag(line - lastLine));
+        writeVarint(line == lastLine ? zigzag(column - lastColumn) : column);
+        if (offsets) {
+            writeVarint(offset - lastOffset);
+            lastOffset = offset;
+        }
+
+        lastLine = line;
+        lastColumn = column;
+        tokens++;
+    }
+
+    public void write(Token token, long offset) throws IOException {
+        String lexeme = token.getLexeme();
+        write(token.getType(), lexeme, 0, lexeme.length(), token.getLine(), token.getColumn(), offset);
+    }
+
+    /* Only for streams created without offsets */
+    public void write(Token token) throws IOException {
+        if (offsets) {
+            throw new IllegalStateException("Stream records offsets; use write(token, offset)");
+        }
+        write(token, 0);
+    }
+
+    public int getTokenCount() {
+        return tokens;
+    }
+
+    /* Append the string table and trailer, then close the underlying stream */
+    @Override
+    public void close() throws IOException {
+
+        long stringTable = written;
+
+        writeVarint(strings.size());
+        for (int id = 0; id < strings.size(); id++) {
+            writeString(strings.getName(id));
+        }
+
+        writeInt(tokens);
+        writeInt((int) (stringTable >>> 32));
+        writeInt((int) stringTable);
+
+        flushBuffer();
+        out.close();
+    }
+
+    /* ---------- Encoding ---------- */
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    static long zigzag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        for (byte b : bytes) {
+            writeByte(b);
+        }
+    }
+
+    private void writeInt(int value) throws IOException {
+        writeByte(value >>> 24);
+        writeByte(value >>> 16);
+        writeByte(value >>> 8);
+        writeByte(value);
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) b;
+        written++;
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, count);
+        count = 0;
+    }
+
+    /* ---------- Command line ---------- */
+
+    public static void printUsage() {
+
+        System.out.println("==========================================");
+        System.out.println("           TOKEN STREAM WRITER");
+        System.out.println("==========================================");
+        System.out.println("Usage: java TokenStreamWriter [--engine manual|jflex] <source> <output.tok>");
+        System.out.println("Example: java TokenStreamWriter ../test/test1.lang test1.tok");
+        System.out.println("  --engine manual|jflex   scanner to run (default manual)");
+        System.out.println("==========================================");
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        String engine = "manual";
+        String source = null;
+        String output = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--engine")) {
+                engine = args[++i].toLowerCase();
+            } else if (source == null) {
+                source = args[i];
+            } else {
+                output = args[i];
+            }
+        }
+
+        if (output == null) {
+            printUsage();
+            return;
+        }
+
+        try (TokenStreamWriter writer = create(Paths.get(output), true)) {
+
+            if (engine.equals("jflex")) {
+                Yylex lexer = new Yylex(new MappedFileReader(Paths.get(source)));
+                lexer.setErrorHandler(new ErrorHandler());
+                lexer.writeTokens(writer);
+            } else {
+                ManualScanner.mapped(Paths.get(source)).writeTokens(writer);
+            }
+
+            System.out.println("Wrote " + writer.getTokenCount() + " tokens to " + output);
+        }
+    }
+}
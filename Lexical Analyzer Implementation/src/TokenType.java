@@ -1,5 +1,6 @@
 public enum TokenType {
 
+    KEYWORD,
     INTEGER_LITERAL,
     FLOAT_LITERAL,
     IDENTIFIER,
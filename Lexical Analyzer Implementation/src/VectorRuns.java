@@ -0,0 +1,106 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * CharRuns on the Vector API: each step loads a full vector of characters
+ * (16 chars or 32 bytes with AVX2, twice that with AVX-512), builds a mask
+ * of the lanes outside the set and stops at its first set lane. The last
+ * partial vector is left to the scalar loop.
+ *
+ * Only loaded through CharRuns.get(), so the rest of the scanner runs on
+ * JVMs started without --add-modules jdk.incubator.vector.
+ */
+final class VectorRuns extends CharRuns {
+
+    private static final VectorSpecies<Short> CHARS = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+
+    @Override
+    public boolean isVectorized() {
+        return true;
+    }
+
+    @Override
+    public int runEnd(char[] chars, int from, int to, int set) {
+
+        int step = CHARS.length();
+        for (int bound = to - step; from <= bound; from += step) {
+            VectorMask<Short> outside = outside(ShortVector.fromCharArray(CHARS, chars, from), set);
+            if (outside.anyTrue()) {
+                return from + outside.firstTrue();
+            }
+        }
+        return super.runEnd(chars, from, to, set);
+    }
+
+    @Override
+    public int runEnd(ByteBuffer bytes, int from, int to, int set) {
+
+        int step = BYTES.length();
+        for (int bound = to - step; from <= bound; from += step) {
+            VectorMask<Byte> outside = outside(
+                    ByteVector.fromByteBuffer(BYTES, bytes, from, ByteOrder.nativeOrder()), set);
+            if (outside.anyTrue()) {
+                return from + outside.firstTrue();
+            }
+        }
+        return super.runEnd(bytes, from, to, set);
+    }
+
+    private static VectorMask<Short> outside(ShortVector v, int set) {
+        switch (set) {
+            case SPACES:
+                return v.compare(VectorOperators.NE, (short) ' ');
+            case DIGITS:
+                return in(v, (short) '0', (short) '9').not();
+            case IDENTIFIER_TAIL:
+                return in(v, (short) 'a', (short) 'z')
+                        .or(in(v, (short) '0', (short) '9'))
+                        .or(v.compare(VectorOperators.EQ, (short) '_'))
+                        .not();
+            case STRING_BODY:
+                return v.compare(VectorOperators.EQ, (short) '"')
+                        .or(v.compare(VectorOperators.EQ, (short) '\\'))
+                        .or(v.compare(VectorOperators.EQ, (short) '\n'));
+            default:
+                return v.compare(VectorOperators.EQ, (short) '\n')
+                        .or(v.compare(VectorOperators.EQ, (short) '\r'));
+        }
+    }
+
+    // Lanes in [low, high]; chars from 0x8000 up are negative shorts and fall outside
+    private static VectorMask<Short> in(ShortVector v, short low, short high) {
+        return v.compare(VectorOperators.GE, low).and(v.compare(VectorOperators.LE, high));
+    }
+
+    private static VectorMask<Byte> in(ByteVector v, byte low, byte high) {
+        return v.compare(VectorOperators.GE, low).and(v.compare(VectorOperators.LE, high));
+    }
+
+    private static VectorMask<Byte> outside(ByteVector v, int set) {
+        switch (set) {
+            case SPACES:
+                return v.compare(VectorOperators.NE, (byte) ' ');
+            case DIGITS:
+                return in(v, (byte) '0', (byte) '9').not();
+            case IDENTIFIER_TAIL:
+                return in(v, (byte) 'a', (byte) 'z')
+                        .or(in(v, (byte) '0', (byte) '9'))
+                        .or(v.compare(VectorOperators.EQ, (byte) '_'))
+                        .not();
+            case STRING_BODY:
+                return v.compare(VectorOperators.EQ, (byte) '"')
+                        .or(v.compare(VectorOperators.EQ, (byte) '\\'))
+                        .or(v.compare(VectorOperators.EQ, (byte) '\n'));
+            default:
+                return v.compare(VectorOperators.EQ, (byte) '\n')
+                        .or(v.compare(VectorOperators.EQ, (byte) '\r'));
+        }
+    }
+}
@@ -6,7 +6,7 @@ import java.io.*;
 
 
 @SuppressWarnings("fallthrough")
-public class Yylex {
+public class Yylex implements Lexer {
 
   /** This character denotes the end of file. */
   public static final int YYEOF = -1;
@@ -303,14 +303,7 @@ public class Yylex {
    */
   private int zzFinalHighSurrogate = 0;
 
-  /** Number of newlines encountered up to the start of the matched text. */
-  private int yyline;
-
-  /** Number of characters from the last newline up to the start of the matched text. */
-  private int yycolumn;
-
   /** Number of characters up to the start of the matched text. */
-  @SuppressWarnings("unused")
   private long yychar;
 
   /** Whether the scanner is currently at the beginning of a line. */
@@ -323,9 +316,16 @@ public class Yylex {
 
   /* user code: */
 
-    private SymbolTable symbolTable;
+    private SymbolStore symbolTable;
     private ErrorHandler errorHandler;
 
+    /*
+     * Line starts, recorded as the reader hands chars to JFlex; positions
+     * come from yychar and this index, like ManualScanner's lazy positions,
+     * instead of %line/%column counting every char of every match
+     */
+    private final LineIndex lines = LineIndex.unicode();
+
     /* Comment counter */
     private int commentCount = 0;
 
@@ -334,10 +334,24 @@ public class Yylex {
     }
 
 public int getLineCount() {
-    return yyline + 1;
+    return lines.line((int) yychar);
 }
 
-    public void setSymbolTable(SymbolTable table) {
+    /* Character offset of the token returned by the last yylex() call */
+    public long getCharOffset() {
+        return yychar;
+    }
+
+    /* Write every token up to EOF to a binary token stream (see TokenStreamWriter) */
+    public void writeTokens(TokenStreamWriter writer) throws IOException {
+
+        Token token;
+        while ((token = yylex()) != null && token.getType() != TokenType.EOF) {
+            writer.write(token, yychar);
+        }
+    }
+
+    public void setSymbolTable(SymbolStore table) {
         this.symbolTable = table;
     }
 
@@ -352,11 +366,32 @@ public int getLineCount() {
         return new Token(
             type,
             lexeme,
-            yyline + 1,
-            yycolumn + 1
+            (int) yychar,
+            lines
         );
     }
 
+    /* Decodes number literals from zzBuffer, without building a String */
+    private final NumberDecoder numbers = new NumberDecoder();
+
+    /* INTEGER_LITERAL or FLOAT_LITERAL with its value, or an error if it is out of range */
+    private Token createNumberToken(TokenType type) {
+
+        boolean decoded = (type == TokenType.INTEGER_LITERAL)
+            ? numbers.decodeInteger(zzBuffer, zzStartRead, zzMarkedPos)
+            : numbers.decodeFloat(zzBuffer, zzStartRead, zzMarkedPos);
+
+        if (!decoded) {
+            return (type == TokenType.INTEGER_LITERAL)
+                ? createErrorToken(ErrorHandler.ErrorType.MALFORMED_INTEGER, "Integer literal out of range")
+                : createErrorToken(ErrorHandler.ErrorType.MALFORMED_FLOAT, "Float literal out of range");
+        }
+
+        Token token = createToken(type);
+        token.setValue(numbers.getBits());
+        return token;
+    }
+
     private Token createErrorToken(
             ErrorHandler.ErrorType type,
             String reason) {
@@ -365,8 +400,8 @@ public int getLineCount() {
 
             errorHandler.reportError(
                 type,
-                yyline + 1,
-                yycolumn + 1,
+                lines.line((int) yychar),
+                lines.column((int) yychar),
                 yytext(),
                 reason
             );
@@ -375,8 +410,8 @@ public int getLineCount() {
         return new Token(
             TokenType.ERROR,
             yytext(),
-            yyline + 1,
-            yycolumn + 1
+            (int) yychar,
+            lines
         );
     }
 
@@ -387,6 +422,7 @@ public int getLineCount() {
    * @param   in  the java.io.Reader to read input from.
    */
   public Yylex(java.io.Reader in) {
+      in = lines.indexing(in);
     this.zzReader = in;
   }
 
@@ -529,8 +565,6 @@ public int getLineCount() {
       zzStartRead = 0;
       zzEndRead = 0;
       zzFinalHighSurrogate = 0;
-      yyline = 0;
-      yycolumn = 0;
       yychar = 0L;
   }
 
@@ -668,63 +702,8 @@ public int getLineCount() {
     while (true) {
       zzMarkedPosL = zzMarkedPos;
 
-      boolean zzR = false;
-      int zzCh;
-      int zzCharCount;
-      for (zzCurrentPosL = zzStartRead  ;
-           zzCurrentPosL < zzMarkedPosL ;
-           zzCurrentPosL += zzCharCount ) {
-        zzCh = Character.codePointAt(zzBufferL, zzCurrentPosL, zzMarkedPosL);
-        zzCharCount = Character.charCount(zzCh);
-        switch (zzCh) {
-        case '\u000B':  // fall through
-        case '\u000C':  // fall through
-        case '\u0085':  // fall through
-        case '\u2028':  // fall through
-        case '\u2029':
-          yyline++;
-          yycolumn = 0;
-          zzR = false;
-          break;
-        case '\r':
-          yyline++;
-          yycolumn = 0;
-          zzR = true;
-          break;
-        case '\n':
-          if (zzR)
-            zzR = false;
-          else {
-            yyline++;
-            yycolumn = 0;
-          }
-          break;
-        default:
-          zzR = false;
-          yycolumn += zzCharCount;
-        }
-      }
+      yychar+= zzMarkedPosL-zzStartRead;
 
-      if (zzR) {
-        // peek one character ahead if it is
-        // (if we have counted one line too much)
-        boolean zzPeek;
-        if (zzMarkedPosL < zzEndReadL)
-          zzPeek = zzBufferL[zzMarkedPosL] == '\n';
-        else if (zzAtEOF)
-          zzPeek = false;
-        else {
-          boolean eof = zzRefill();
-          zzEndReadL = zzEndRead;
-          zzMarkedPosL = zzMarkedPos;
-          zzBufferL = zzBuffer;
-          if (eof)
-            zzPeek = false;
-          else
-            zzPeek = zzBufferL[zzMarkedPosL] == '\n';
-        }
-        if (zzPeek) yyline--;
-      }
       zzAction = -1;
 
       zzCurrentPosL = zzCurrentPos = zzStartRead = zzMarkedPosL;
@@ -791,8 +770,8 @@ public int getLineCount() {
                 return new Token(
         TokenType.EOF,
         "EOF",
-        yyline + 1,
-        yycolumn + 1
+        lines.line((int) yychar),
+        lines.column((int) yychar)
     );
               }
       }
@@ -820,7 +799,7 @@ public int getLineCount() {
           // fall through
           case 16: break;
           case 4:
-            { return createToken(TokenType.INTEGER_LITERAL);
+            { return createNumberToken(TokenType.INTEGER_LITERAL);
             }
           // fall through
           case 17: break;
@@ -856,7 +835,7 @@ public int getLineCount() {
           // fall through
           case 22: break;
           case 10:
-            { return createToken(TokenType.FLOAT_LITERAL);
+            { return createNumberToken(TokenType.FLOAT_LITERAL);
             }
           // fall through
           case 23: break;